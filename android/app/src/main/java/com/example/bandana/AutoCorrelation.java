@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+import java.util.Arrays;
+
+/**
+ * Computes the raw correlation sums r[i] = x[0]*x[i] + x[1]*x[i+1] + ... + x[n-1-i]*x[n-1]
+ * of a signal with itself. Normalisation is left to the caller.
+ */
+public class AutoCorrelation {
+
+    enum Method {
+        DIRECT, // O(n²) double loop
+        FFT // O(n log n) via the Wiener-Khinchin theorem
+    }
+
+    /** Returns the correlation sums of the first length samples of input using the given method */
+    static double[] correlate(double[] input, int length, Method method) {
+        double[] result = new double[length];
+        correlate(input, length, method, result, method == Method.FFT ? new double[getPaddedLength(length)] : null);
+        return result;
+    }
+
+    /**
+     * Writes the correlation sums into the first length elements of result. The FFT method needs a
+     * spectrum buffer of at least getPaddedLength(length) elements, DIRECT ignores it.
+     */
+    static void correlate(double[] input, int length, Method method, double[] result, double[] spectrum) {
+        if (method == Method.DIRECT) {
+            direct(input, length, result);
+        } else {
+            fft(input, length, result, spectrum);
+        }
+    }
+
+    /** Direct evaluation of the correlation sums for every shift */
+    static void direct(double[] input, int length, double[] result) {
+        for (int i = 0; i < length; i++) {
+            double sum = 0;
+
+            for (int j = 0; j < length - i; j++) {
+                sum += input[j] * input[j + i];
+            }
+
+            result[i] = sum;
+        }
+    }
+
+    /**
+     * Computes the correlation sums as the inverse transform of the power spectrum. The signal is
+     * zero-padded to a power of two of at least 2n-1 samples, so the circular correlation of the
+     * FFT does not wrap around into the shifts we are interested in.
+     */
+    static void fft(double[] input, int length, double[] result, double[] spectrum) {
+        if (length == 0) {
+            return;
+        }
+
+        int paddedLength = getPaddedLength(length);
+        System.arraycopy(input, 0, spectrum, 0, length);
+        Arrays.fill(spectrum, length, paddedLength, 0.0);
+
+        DoubleFFT_1D fftDo = FftPlanCache.getShared().get(paddedLength);
+        fftDo.realForward(spectrum);
+        toPowerSpectrum(spectrum, paddedLength);
+        fftDo.realInverse(spectrum, true);
+
+        System.arraycopy(spectrum, 0, result, 0, length);
+    }
+
+    /** Returns the smallest power of two that holds the linear correlation of length samples */
+    static int getPaddedLength(int length) {
+        int paddedLength = 1;
+
+        while (paddedLength < 2 * length - 1) {
+            paddedLength <<= 1;
+        }
+
+        return paddedLength;
+    }
+
+    /**
+     * Replaces the packed output of realForward with |X[k]|². Element 0 holds the DC term and
+     * element 1 the Nyquist term, both real; the remaining pairs are real and imaginary parts.
+     */
+    private static void toPowerSpectrum(double[] spectrum, int length) {
+        if (length == 1) {
+            spectrum[0] *= spectrum[0];
+            return;
+        }
+
+        spectrum[0] *= spectrum[0];
+        spectrum[1] *= spectrum[1];
+
+        for (int k = 2; k < length; k += 2) {
+            double re = spectrum[k];
+            double im = spectrum[k + 1];
+            spectrum[k] = re * re + im * im;
+            spectrum[k + 1] = 0;
+        }
+    }
+}
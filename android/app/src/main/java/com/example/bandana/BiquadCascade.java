@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+
+import uk.me.berndporr.iirj.Biquad;
+import uk.me.berndporr.iirj.Cascade;
+
+/**
+ * IIR filter as a cascade of second-order sections in transposed direct form II. Splitting a high
+ * order filter into biquads keeps every coefficient in a small range, so the response does not
+ * depend on polynomial coefficients cancelling each other to many digits. Samples can be pushed
+ * one at a time or as a block; both produce the same output and share the same state.
+ */
+public class BiquadCascade {
+
+    final int sections;
+    final double[] coefficients; // b0, b1, b2, a1, a2 of every section, normalised to a0 = 1
+    final double[] state; // The two delay elements of every section
+
+    /** Takes the sections in the layout of scipy's sos arrays, one row {b0, b1, b2, a0, a1, a2} per section */
+    public BiquadCascade(double[][] sos){
+        sections = sos.length;
+        coefficients = new double[sections * 5];
+        state = new double[sections * 2];
+
+        for(int i = 0; i < sections; i++){
+            if(sos[i].length != 6){
+                throw new IllegalArgumentException("section " + i + " has " + sos[i].length + " coefficients instead of 6");
+            }
+
+            double a0 = sos[i][3];
+
+            coefficients[i * 5] = sos[i][0] / a0;
+            coefficients[i * 5 + 1] = sos[i][1] / a0;
+            coefficients[i * 5 + 2] = sos[i][2] / a0;
+            coefficients[i * 5 + 3] = sos[i][4] / a0;
+            coefficients[i * 5 + 4] = sos[i][5] / a0;
+        }
+    }
+
+    /** Copies the sections of an iirj filter */
+    public static BiquadCascade fromCascade(Cascade cascade){
+        return new BiquadCascade(toSections(cascade));
+    }
+
+    /** Returns the sections of an iirj filter in sos layout, its biquads already hold coefficients normalised to a0 */
+    static double[][] toSections(Cascade cascade){
+        double[][] sos = new double[cascade.getNumBiquads()][];
+
+        for(int i = 0; i < sos.length; i++){
+            Biquad biquad = cascade.getBiquad(i);
+            sos[i] = new double[]{biquad.getB0(), biquad.getB1(), biquad.getB2(), 1.0, biquad.getA1(), biquad.getA2()};
+        }
+
+        return sos;
+    }
+
+    /** Returns the number of second-order sections */
+    public int getSections(){
+        return sections;
+    }
+
+    /** Clears the delay elements, the next sample is filtered as if it were the first one */
+    public void reset(){
+        Arrays.fill(state, 0.0);
+    }
+
+    /**
+     * Sets the delay elements to the values they settle at when the input has been constant for a
+     * long time, so filtering a signal that starts at that level does not produce a start-up
+     * transient. This is scipy's sosfilt_zi scaled by the input level.
+     */
+    public void setSteadyState(double input){
+        double level = input;
+
+        for(int i = 0, c = 0, s = 0; i < sections; i++, c += 5, s += 2){
+            double b0 = coefficients[c], b1 = coefficients[c + 1], b2 = coefficients[c + 2];
+            double a1 = coefficients[c + 3], a2 = coefficients[c + 4];
+            double output = level * (b0 + b1 + b2) / (1 + a1 + a2); // DC gain of the section
+
+            state[s] = level * (b1 + b2) - (a1 + a2) * output;
+            state[s + 1] = level * b2 - a2 * output;
+            level = output;
+        }
+    }
+
+    /** Filters a single sample */
+    public double filter(double sample){
+        double x = sample;
+
+        for(int i = 0, c = 0, s = 0; i < sections; i++, c += 5, s += 2){
+            double y = coefficients[c] * x + state[s];
+            state[s] = coefficients[c + 1] * x - coefficients[c + 3] * y + state[s + 1];
+            state[s + 1] = coefficients[c + 2] * x - coefficients[c + 4] * y;
+            x = y;
+        }
+
+        return x;
+    }
+
+    /**
+     * Filters length samples of input into output, which may be the same array. The block is run
+     * through one section after the other, so the state of a section stays in registers.
+     */
+    public void filter(double[] input, int inputOffset, double[] output, int outputOffset, int length){
+        if(input != output || inputOffset != outputOffset){
+            System.arraycopy(input, inputOffset, output, outputOffset, length);
+        }
+
+        for(int i = 0, c = 0, s = 0; i < sections; i++, c += 5, s += 2){
+            double b0 = coefficients[c], b1 = coefficients[c + 1], b2 = coefficients[c + 2];
+            double a1 = coefficients[c + 3], a2 = coefficients[c + 4];
+            double z1 = state[s], z2 = state[s + 1];
+
+            for(int n = outputOffset; n < outputOffset + length; n++){
+                double x = output[n];
+                double y = b0 * x + z1;
+                z1 = b1 * x - a1 * y + z2;
+                z2 = b2 * x - a2 * y;
+                output[n] = y;
+            }
+
+            state[s] = z1;
+            state[s + 1] = z2;
+        }
+    }
+
+    /** Filters the whole signal into a new one, continuing from the current state */
+    public Signal filter(Signal input){
+        Signal output = new Signal(input.size());
+        filter(input.data, input.offset, output.data, 0, input.size());
+        return output;
+    }
+}
@@ -19,6 +19,7 @@ import android.util.Log;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -44,6 +45,7 @@ public class BluetoothManager {
     private ArrayList<BluetoothDevice> deviceList;
     private int failedConnectionCount;
     private static final UUID MY_UUID_INSECURE = UUID.fromString("8ce255c0-200a-11e0-ac64-0800200c9a66");
+    private static final int MAX_FINGERPRINT_BITS = 256; // The selected fingerprint has 32 bits, more is not a valid peer
     private BluetoothSocket connectedSocket; // Successfully connected socket
     private boolean isConnected;
     boolean isServer;
@@ -357,42 +359,41 @@ public class BluetoothManager {
     }
 
     /**
-     * Read the fingerprint array sent by the connected device
+     * Read the fingerprint sent by the connected device, its bit count followed by the packed words
      */
-    public ArrayList<Integer> getFingerprint() {
-        ArrayList<Integer> fingerprint = new ArrayList<>();
-        InputStream inStream = null;
+    public PackedFingerprint getFingerprint() {
+        DataInputStream inStream = null;
         try {
-            inStream = connectedSocket.getInputStream();
+            inStream = new DataInputStream(connectedSocket.getInputStream());
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
 
-        byte[] mmBuffer = new byte[4];
+        try {
+            int length = inStream.readInt();
 
-        /** Reads fingerprint values until the value -1.0 is read */
-        while (true) {
-            try {
-                inStream.read(mmBuffer);
-                int fpBit = ByteBuffer.wrap(mmBuffer).getInt();
+            // The length comes from the peer, anything beyond the protocol is dropped before allocating
+            if (length < 0 || length > MAX_FINGERPRINT_BITS) {
+                Log.d(Constants.TAG, "fingerprint length " + length + " rejected");
+                return null;
+            }
 
-                if (fpBit == -1.0)
-                    break;
+            byte[] fingerprint = new byte[4 + ((length + 63) / 64) * 8];
+            ByteBuffer.wrap(fingerprint).putInt(length);
+            inStream.readFully(fingerprint, 4, fingerprint.length - 4);
 
-                fingerprint.add(fpBit);
-            } catch (IOException e) {
-                e.printStackTrace();
-                break;
-            }
+            return PackedFingerprint.fromBytes(fingerprint);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
         }
-
-        return fingerprint;
     }
 
     /**
-     * Send the fingerprint array to the connected device
+     * Send the fingerprint to the connected device, one bit per bit instead of four bytes
      */
-    public void sendFingerprint(ArrayList<Integer> fingerprint) {
+    public void sendFingerprint(PackedFingerprint fingerprint) {
 
         OutputStream outStream = null;
         try {
@@ -402,11 +403,7 @@ public class BluetoothManager {
         }
 
         try {
-            for (int fpBit : fingerprint) {
-                outStream.write(ByteBuffer.allocate(4).putInt(fpBit).array());
-            }
-
-            outStream.write(ByteBuffer.allocate(4).putInt(-1).array());
+            outStream.write(fingerprint.toBytes());
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * Reduces the sample rate of a window by an integer factor. The anti-aliasing low-pass is a
+ * Lanczos-windowed sinc with its cutoff at the new Nyquist frequency, centred on every kept sample
+ * so the output has no delay. It is evaluated in polyphase form: only every factor-th output is
+ * computed, so the cost per input sample is taps / factor multiply-adds instead of taps.
+ */
+public class Decimator {
+
+    static final int ZERO_CROSSINGS = 6; // Lobes of the sinc on either side of the centre, in output samples
+
+    final int factor;
+    final int reach; // Input samples on either side of the centre with a non-zero weight
+    final double[] weights; // 2 * reach + 1 taps, normalised to a gain of 1 at DC
+
+    public Decimator(int factor){
+        if(factor < 1){
+            throw new IllegalArgumentException("decimation factor " + factor + " is not positive");
+        }
+
+        this.factor = factor;
+
+        double cutoff = 1.0 / factor;
+        reach = factor == 1 ? 0 : ZERO_CROSSINGS * factor - 1;
+        weights = new double[2 * reach + 1];
+        double sum = 0;
+
+        for(int k = -reach; k <= reach; k++){
+            double weight = sinc(cutoff * k) * sinc(cutoff * k / ZERO_CROSSINGS);
+            weights[k + reach] = weight;
+            sum += weight;
+        }
+
+        for(int k = 0; k < weights.length; k++){
+            weights[k] /= sum;
+        }
+    }
+
+    /** Returns the decimation factor */
+    public int getFactor(){
+        return factor;
+    }
+
+    /** Returns the number of samples decimating length samples yields */
+    public int getOutputLength(int length){
+        return (length + factor - 1) / factor;
+    }
+
+    /**
+     * Writes the decimated samples of input to output starting at outputOffset and returns their
+     * number. Output sample m is input sample m * factor after filtering; beyond the ends of the
+     * input the first and last sample are repeated.
+     */
+    public int decimate(Signal input, double[] output, int outputOffset){
+        double[] data = input.data;
+        int offset = input.offset;
+        int length = input.size();
+        int outputLength = getOutputLength(length);
+
+        for(int m = 0; m < outputLength; m++){
+            int centre = m * factor;
+            double sum = 0;
+
+            if(centre - reach >= 0 && centre + reach < length){
+                int first = offset + centre - reach;
+
+                for(int k = 0; k < weights.length; k++){
+                    sum += weights[k] * data[first + k];
+                }
+            } else {
+                for(int k = 0; k < weights.length; k++){
+                    int index = Math.min(Math.max(centre - reach + k, 0), length - 1);
+                    sum += weights[k] * data[offset + index];
+                }
+            }
+
+            output[outputOffset + m] = sum;
+        }
+
+        return outputLength;
+    }
+
+    private static double sinc(double x){
+        if(x == 0){
+            return 1.0;
+        }
+
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+}
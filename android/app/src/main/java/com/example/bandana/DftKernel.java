@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * The FFT resampling of a cycle of inputLength samples to outputLength points as one precomputed
+ * real matrix: the forward DFT, keeping the outputLength lowest frequencies (the first
+ * (outputLength + 1) / 2 bins and the last outputLength / 2), the scaled inverse DFT and the
+ * outputLength / inputLength gain. Since only the real part is used, output point m is the sum
+ * over the input samples n of x[n] / inputLength times the sum over the kept frequencies f of
+ * cos(2 pi f (m / outputLength - n / inputLength)). At the 40-70 samples of a gait cycle applying
+ * the matrix is cheap, and unlike JTransforms on lengths that are not a power of two it needs no
+ * scratch array.
+ */
+class DftKernel {
+
+    final int inputLength;
+    final int outputLength;
+
+    private final double[] weights; // Row m holds the weights of output point m
+
+    DftKernel(int inputLength, int outputLength){
+        this.inputLength = inputLength;
+        this.outputLength = outputLength;
+
+        int firstHalf = (outputLength + 1) / 2;
+        int secondHalf = outputLength - firstHalf;
+        long period = (long) inputLength * outputLength;
+        double gain = 1.0 / inputLength; // The outputLength / inputLength gain times the 1 / outputLength of the inverse DFT
+
+        weights = new double[outputLength * inputLength];
+
+        for(int m = 0; m < outputLength; m++){
+            for(int n = 0; n < inputLength; n++){
+                // m / outputLength - n / inputLength in units of 1 / period, so the phase stays exact
+                long difference = (long) m * inputLength - (long) n * outputLength;
+                double sum = 0;
+
+                for(int f = -secondHalf; f < firstHalf; f++){
+                    long phase = ((f * difference) % period + period) % period;
+                    sum += Math.cos(2 * Math.PI * phase / period);
+                }
+
+                weights[m * inputLength + n] = sum * gain;
+            }
+        }
+    }
+
+    /** Writes the outputLength points of the cycle starting at inputOffset */
+    void apply(double[] input, int inputOffset, double[] output, int outputOffset){
+        for(int m = 0, p = 0; m < outputLength; m++){
+            double sum = 0;
+
+            for(int n = 0; n < inputLength; n++, p++){
+                sum += weights[p] * input[inputOffset + n];
+            }
+
+            output[outputOffset + m] = sum;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache of JTransforms plans keyed by transform length. Setting up the
+ * twiddle factors of a plan costs much more than transforming the 40-60 samples of a gait cycle,
+ * and the same few lengths come up in every round. Plans only hold read-only tables after
+ * construction, so a cached plan can be used from several threads at once. The DFT kernels the
+ * Resampler applies instead of a transform are cached the same way, keyed by input length.
+ */
+public class FftPlanCache {
+
+    static final int DEFAULT_CAPACITY = 32;
+
+    private static final FftPlanCache shared = new FftPlanCache(DEFAULT_CAPACITY);
+
+    private final LinkedHashMap<Integer, DoubleFFT_1D> plans;
+    private final LinkedHashMap<Integer, DftKernel> kernels;
+    private long hitCount;
+    private long missCount;
+
+    public FftPlanCache(final int capacity){
+        plans = new LinkedHashMap<Integer, DoubleFFT_1D>(capacity, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DoubleFFT_1D> eldest){
+                return size() > capacity;
+            }
+        };
+
+        kernels = new LinkedHashMap<Integer, DftKernel>(capacity, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DftKernel> eldest){
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Returns the cache used by the signal processing stages */
+    public static FftPlanCache getShared(){
+        return shared;
+    }
+
+    /** Returns the plan for the given length, creating it on a miss */
+    public synchronized DoubleFFT_1D get(int length){
+        DoubleFFT_1D plan = plans.get(length);
+
+        if(plan != null){
+            hitCount++;
+            return plan;
+        }
+
+        missCount++;
+        plan = new DoubleFFT_1D(length);
+        plans.put(length, plan);
+
+        return plan;
+    }
+
+    /**
+     * Returns the kernel resampling inputLength samples to outputLength points, creating it on a
+     * miss. A cached kernel of the same input length but another output length is replaced.
+     */
+    public synchronized DftKernel getKernel(int inputLength, int outputLength){
+        DftKernel kernel = kernels.get(inputLength);
+
+        if(kernel != null && kernel.outputLength == outputLength){
+            hitCount++;
+            return kernel;
+        }
+
+        missCount++;
+        kernel = new DftKernel(inputLength, outputLength);
+        kernels.put(inputLength, kernel);
+
+        return kernel;
+    }
+
+    /** Returns the number of lookups that found a cached plan or kernel */
+    public synchronized long getHitCount(){
+        return hitCount;
+    }
+
+    /** Returns the number of lookups that had to create a plan or kernel */
+    public synchronized long getMissCount(){
+        return missCount;
+    }
+
+    /** Drops all plans and kernels and resets the counters */
+    public synchronized void clear(){
+        plans.clear();
+        kernels.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+}
@@ -5,72 +5,125 @@
  */
 package com.example.bandana;
 
-import java.util.ArrayList;
-
 class Filter {
 
+    /* The polynomials of chebyBandpass, from python's cheby2 */
+    static final double[] CHEBY_BANDPASS_DENOMINATORS = {1.0, -12.4023489316,
+            72.7705163332,
+            -268.206079207,
+            695.120321927,
+            -1343.52165891,
+            2003.41442085,
+            -2351.25970818,
+            2195.05920722,
+            -1635.56639133,
+            969.472288828,
+            -452.346716699,
+            162.877960385,
+            -43.7549522621,
+            8.27072776307,
+            -0.982922971673,
+            0.0553351921562};
+
+    static final double[] CHEBY_BANDPASS_NUMERATORS = {6.80889648953e-05,
+            -0.00034782531341,
+            0.000745060188436,
+            -0.00100075533188,
+            0.00115544521263,
+            -0.00113292935145,
+            0.000791053581008,
+            -0.00057251039251,
+            0.000588744884545,
+            -0.00057251039251,
+            0.000791053581008,
+            -0.00113292935145,
+            0.00115544521263,
+            -0.00100075533188,
+            0.000745060188436,
+            -0.00034782531341,
+            6.80889648953e-05};
+
+    /*
+     * The band-pass of chebyBandpass as eight second-order sections {b0, b1, b2, a0, a1, a2}. The
+     * sections were obtained by factoring the numerator and denominator polynomials above into their
+     * roots (polished in 60 digit arithmetic) and pairing every pole pair with its nearest zero pair,
+     * like scipy's zpk2sos: poles closest to the unit circle come last, the gain sits in the first
+     * section. Multiplying the sections out gives back the polynomials to within 2e-14 relative,
+     * which the poles close to the unit circle turn into output differences of about 3e-5; the
+     * rounding errors of the cascade itself stay near 5e-14. See FilterComparison.
+     */
+    static final double[][] CHEBY_BANDPASS_SOS = {
+            {6.80889648953e-05, 1.2418183696977193e-04, 6.80889648953e-05, 1.0, -1.3086328030192158, 0.46255182607693773},
+            {1.0, 0.9269481379067693, 1.0, 1.0, -1.2282098027799104, 0.490861412410769},
+            {1.0, 0.2221643652247951, 0.9999999999999999, 1.0, -1.5644170253450032, 0.6223718601907567},
+            {1.0, -0.08935290308910013, 1.0, 1.0, -1.276587742493913, 0.6324870832657546},
+            {1.0, -2.0002334350765967, 1.0, 1.0, -1.7314145882729837, 0.7854165587543817},
+            {1.0, -2.020172459027277, 1.022467103214162, 1.0, -1.4166990747184538, 0.8563091645724311},
+            {1.0, -1.9757823529742844, 0.978026575971456, 1.0, -1.9200416825242497, 0.9310419442883411},
+            {1.0, -1.9957835125348695, 1.0, 1.0, -1.9563462124462707, 0.9887366413776266}};
+
+    /** Returns a new streaming instance of the chebyBandpass filter as a biquad cascade */
+    static BiquadCascade createChebyBandpass() {
+        return new BiquadCascade(CHEBY_BANDPASS_SOS);
+    }
+
+    /** Same filter as chebyBandpass, evaluated as a biquad cascade starting from a zero state */
+    Signal chebyBandpassCascade(Signal input) {
+        return createChebyBandpass().filter(input);
+    }
+
+    /**
+     * Filters the input with the polynomial and the cascade form and returns the largest difference
+     * between the two outputs, relative to the largest output magnitude of the polynomial form.
+     * BatchEvaluation --compare-filters runs it on recorded traces.
+     */
+    static double compareChebyBandpass(Signal input) {
+        Filter filter = new Filter();
+        Signal polynomial = filter.chebyBandpass(input);
+        Signal cascade = filter.chebyBandpassCascade(input);
+        double maxDifference = 0;
+        double maxMagnitude = 0;
+
+        for (int i = 0; i < input.size(); i++) {
+            maxDifference = Math.max(maxDifference, Math.abs(polynomial.get(i) - cascade.get(i)));
+            maxMagnitude = Math.max(maxMagnitude, Math.abs(polynomial.get(i)));
+        }
+
+        return maxMagnitude > 0 ? maxDifference / maxMagnitude : maxDifference;
+    }
+
     /* Chebyshev Type 2 bandpass filter. Uses parameter arrays a and b from python cheby2 method with parameters:
         order = 5
         low = 0.5
         high = 12.0
         type = bandpass
     */
-    ArrayList<Double> chebyBandpass(ArrayList<Double> input) {
-
-        double[] denominators = {1.0, -12.4023489316,
-                72.7705163332,
-                -268.206079207,
-                695.120321927,
-                -1343.52165891,
-                2003.41442085,
-                -2351.25970818,
-                2195.05920722,
-                -1635.56639133,
-                969.472288828,
-                -452.346716699,
-                162.877960385,
-                -43.7549522621,
-                8.27072776307,
-                -0.982922971673,
-                0.0553351921562};
-
-        double[] numerators = {6.80889648953e-05,
-                -0.00034782531341,
-                0.000745060188436,
-                -0.00100075533188,
-                0.00115544521263,
-                -0.00113292935145,
-                0.000791053581008,
-                -0.00057251039251,
-                0.000588744884545,
-                -0.00057251039251,
-                0.000791053581008,
-                -0.00113292935145,
-                0.00115544521263,
-                -0.00100075533188,
-                0.000745060188436,
-                -0.00034782531341,
-                6.80889648953e-05};
+    Signal chebyBandpass(Signal input) {
+
+        double[] denominators = CHEBY_BANDPASS_DENOMINATORS;
+        double[] numerators = CHEBY_BANDPASS_NUMERATORS;
 
         int order = 16;
-        ArrayList<Double> output = new ArrayList<Double>();
+        Signal output = new Signal(input.size());
         int i, j;
-        output.add(numerators[0] * input.get(0));
+        output.set(0, numerators[0] * input.get(0));
 
         for (i = 1; i < order + 1; i++) {
-            output.add(i, 0.0);
+            double sum = 0.0;
             for (j = 0; j < i + 1; j++)
-                output.set(i, output.get(i) + numerators[j] * input.get(i - j));
+                sum += numerators[j] * input.get(i - j);
             for (j = 0; j < i; j++)
-                output.set(i, output.get(i) - denominators[j + 1] * output.get(i - j - 1));
+                sum -= denominators[j + 1] * output.get(i - j - 1);
+            output.set(i, sum);
         }
         //end of initial part
         for (i = order + 1; i < input.size(); i++) {
-            output.add(i, 0.0);
+            double sum = 0.0;
             for (j = 0; j < order + 1; j++)
-                output.set(i, output.get(i) + numerators[j] * input.get(i - j));
+                sum += numerators[j] * input.get(i - j);
             for (j = 0; j < order; j++)
-                output.set(i, output.get(i) - denominators[j + 1] * output.get(i - j - 1));
+                sum -= denominators[j + 1] * output.get(i - j - 1);
+            output.set(i, sum);
         }
 
         return output;
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+
+/**
+ * Runs the same biquad cascade over several channels at once, e.g. the x, y and z axes of the
+ * accelerometer and their magnitude. The channels are kept as separate arrays (structure of arrays)
+ * and the state of every section is stored channel after channel, so the innermost loop walks
+ * plain arrays with the same index and the JIT can turn it into SIMD instructions. Every channel
+ * gets exactly the output a BiquadCascade would produce for it on its own. With -PvectorJdk the
+ * evaluation and benchmark modules also build a Vector API subclass, see create.
+ */
+public class FilterBank {
+
+    final int channels;
+    final int sections;
+    final double[] coefficients; // b0, b1, b2, a1, a2 of every section, shared by all channels
+
+    // Delay elements, one array per section and element, indexed by channel
+    final double[][] z1;
+    final double[][] z2;
+
+    private final double[] frame; // The current sample of every channel while it passes the sections
+
+    public FilterBank(BiquadCascade cascade, int channels){
+        this.channels = channels;
+        this.sections = cascade.sections;
+        this.coefficients = cascade.coefficients.clone();
+
+        z1 = new double[sections][channels];
+        z2 = new double[sections][channels];
+        frame = new double[channels];
+    }
+
+    /**
+     * Returns the Vector API version if it was compiled in (the opt-in vector source set of the
+     * evaluation and benchmark modules) and the JVM runs with jdk.incubator.vector, this class
+     * otherwise, as on Android
+     */
+    public static FilterBank create(BiquadCascade cascade, int channels){
+        try {
+            Class<?> vector = Class.forName("com.example.bandana.FilterBankVector");
+            return (FilterBank) vector.getConstructor(BiquadCascade.class, int.class).newInstance(cascade, channels);
+        } catch (Exception | LinkageError e) {
+            return new FilterBank(cascade, channels);
+        }
+    }
+
+    /** Returns the number of channels */
+    public int getChannels(){
+        return channels;
+    }
+
+    /** Clears the delay elements of all channels */
+    public void reset(){
+        for(int i = 0; i < sections; i++){
+            Arrays.fill(z1[i], 0.0);
+            Arrays.fill(z2[i], 0.0);
+        }
+    }
+
+    /**
+     * Filters length samples of every channel, starting at offset, from input[channel] into
+     * output[channel]. Input and output may be the same arrays.
+     */
+    public void filter(double[][] input, double[][] output, int offset, int length){
+        checkChannels(input, output);
+
+        double[] x = frame;
+
+        for(int n = offset; n < offset + length; n++){
+            for(int c = 0; c < channels; c++){
+                x[c] = input[c][n];
+            }
+
+            for(int i = 0, k = 0; i < sections; i++, k += 5){
+                double b0 = coefficients[k], b1 = coefficients[k + 1], b2 = coefficients[k + 2];
+                double a1 = coefficients[k + 3], a2 = coefficients[k + 4];
+                double[] s1 = z1[i];
+                double[] s2 = z2[i];
+
+                // Independent across channels, this is the loop that gets vectorised
+                for(int c = 0; c < channels; c++){
+                    double in = x[c];
+                    double y = b0 * in + s1[c];
+                    s1[c] = b1 * in - a1 * y + s2[c];
+                    s2[c] = b2 * in - a2 * y;
+                    x[c] = y;
+                }
+            }
+
+            for(int c = 0; c < channels; c++){
+                output[c][n] = x[c];
+            }
+        }
+    }
+
+    /** Throws if input or output does not hold one array per channel */
+    void checkChannels(double[][] input, double[][] output){
+        if(input.length != channels || output.length != channels){
+            throw new IllegalArgumentException("expected " + channels + " channels");
+        }
+    }
+
+    /** Writes the euclidean norm of the three axes into magnitude, e.g. as an extra channel */
+    public static void magnitude(double[] x, double[] y, double[] z, double[] magnitude, int offset, int length){
+        for(int n = offset; n < offset + length; n++){
+            magnitude[n] = Math.sqrt(x[n] * x[n] + y[n] * y[n] + z[n] * z[n]);
+        }
+    }
+}
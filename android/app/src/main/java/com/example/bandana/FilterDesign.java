@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.me.berndporr.iirj.Butterworth;
+import uk.me.berndporr.iirj.Cascade;
+import uk.me.berndporr.iirj.ChebyshevII;
+
+/**
+ * Designs Butterworth and Chebyshev II filters at runtime for any order, sample rate and band, so
+ * a different sensor rate does not need a new set of hard-coded coefficients. The design itself is
+ * done by iirj; the resulting second-order sections are kept in a bounded least-recently-used cache
+ * keyed by the design parameters, so repeated windows get the sections without redesigning. Every
+ * call to create returns a cascade with its own state.
+ */
+public class FilterDesign {
+
+    enum Type {
+        BUTTERWORTH,
+        CHEBYSHEV_II // Flat pass band, the ripple parameter is the stop band attenuation in dB
+    }
+
+    enum Band {
+        LOW_PASS,
+        HIGH_PASS,
+        BAND_PASS,
+        BAND_STOP
+    }
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    private static final FilterDesign shared = new FilterDesign(DEFAULT_CAPACITY);
+
+    private final LinkedHashMap<Key, double[][]> designs;
+    private long hitCount;
+    private long missCount;
+
+    /** Design parameters, low is the cutoff of low- and high-passes and high is unused for them */
+    private static final class Key {
+        final Type type;
+        final Band band;
+        final int order;
+        final double sampleRate, low, high, ripple;
+
+        Key(Type type, Band band, int order, double sampleRate, double low, double high, double ripple){
+            this.type = type;
+            this.band = band;
+            this.order = order;
+            this.sampleRate = sampleRate;
+            this.low = low;
+            this.high = high;
+            this.ripple = ripple;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if(!(other instanceof Key)){
+                return false;
+            }
+
+            Key key = (Key) other;
+
+            return type == key.type && band == key.band && order == key.order
+                    && Double.compare(sampleRate, key.sampleRate) == 0 && Double.compare(low, key.low) == 0
+                    && Double.compare(high, key.high) == 0 && Double.compare(ripple, key.ripple) == 0;
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = type.hashCode() * 31 + band.hashCode();
+            hash = hash * 31 + order;
+            hash = hash * 31 + Double.valueOf(sampleRate).hashCode();
+            hash = hash * 31 + Double.valueOf(low).hashCode();
+            hash = hash * 31 + Double.valueOf(high).hashCode();
+            return hash * 31 + Double.valueOf(ripple).hashCode();
+        }
+    }
+
+    public FilterDesign(final int capacity){
+        designs = new LinkedHashMap<Key, double[][]>(capacity, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, double[][]> eldest){
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Returns the cache used by the signal processing stages */
+    public static FilterDesign getShared(){
+        return shared;
+    }
+
+    /** Returns a Chebyshev II low- or high-pass with the given stop band attenuation */
+    public BiquadCascade chebyshevII(Band band, int order, double sampleRate, double cutoff, double ripple){
+        return create(Type.CHEBYSHEV_II, band, order, sampleRate, cutoff, 0, ripple);
+    }
+
+    /** Returns a Butterworth low- or high-pass */
+    public BiquadCascade butterworth(Band band, int order, double sampleRate, double cutoff){
+        return create(Type.BUTTERWORTH, band, order, sampleRate, cutoff, 0, 0);
+    }
+
+    /**
+     * Returns a new cascade for the design. Frequencies are in Hz; low- and high-passes use low as
+     * cutoff, band filters pass or stop low to high. The ripple is ignored for Butterworth filters.
+     */
+    public BiquadCascade create(Type type, Band band, int order, double sampleRate, double low, double high, double ripple){
+        return new BiquadCascade(getSections(type, band, order, sampleRate, low, high, ripple));
+    }
+
+    /** Returns the sections of the design in scipy's sos layout, designing them on a miss; the arrays must not be modified */
+    public synchronized double[][] getSections(Type type, Band band, int order, double sampleRate, double low, double high, double ripple){
+        boolean twoEdges = band == Band.BAND_PASS || band == Band.BAND_STOP;
+
+        if(type == Type.BUTTERWORTH){
+            ripple = 0;
+        }
+        if(!twoEdges){
+            high = 0;
+        }
+
+        Key key = new Key(type, band, order, sampleRate, low, high, ripple);
+        double[][] sections = designs.get(key);
+
+        if(sections != null){
+            hitCount++;
+            return sections;
+        }
+
+        if(order < 1){
+            throw new IllegalArgumentException("order " + order + " is not positive");
+        }
+        if(!(low > 0) || !((twoEdges ? high : low) < sampleRate / 2) || (twoEdges && !(low < high))){
+            throw new IllegalArgumentException("band " + low + (twoEdges ? "-" + high : "") + " Hz does not fit a sample rate of " + sampleRate + " Hz");
+        }
+
+        missCount++;
+        sections = design(key);
+        designs.put(key, sections);
+
+        return sections;
+    }
+
+    private static double[][] design(Key key){
+        double center = (key.low + key.high) / 2; // iirj places the band edges at center -/+ width/2
+        double width = key.high - key.low;
+        Cascade cascade;
+
+        if(key.type == Type.BUTTERWORTH){
+            Butterworth butterworth = new Butterworth();
+
+            switch(key.band){
+                case LOW_PASS: butterworth.lowPass(key.order, key.sampleRate, key.low); break;
+                case HIGH_PASS: butterworth.highPass(key.order, key.sampleRate, key.low); break;
+                case BAND_PASS: butterworth.bandPass(key.order, key.sampleRate, center, width); break;
+                default: butterworth.bandStop(key.order, key.sampleRate, center, width); break;
+            }
+
+            cascade = butterworth;
+        } else {
+            ChebyshevII chebyshevII = new ChebyshevII();
+
+            switch(key.band){
+                case LOW_PASS: chebyshevII.lowPass(key.order, key.sampleRate, key.low, key.ripple); break;
+                case HIGH_PASS: chebyshevII.highPass(key.order, key.sampleRate, key.low, key.ripple); break;
+                case BAND_PASS: chebyshevII.bandPass(key.order, key.sampleRate, center, width, key.ripple); break;
+                default: chebyshevII.bandStop(key.order, key.sampleRate, center, width, key.ripple); break;
+            }
+
+            cascade = chebyshevII;
+        }
+
+        return BiquadCascade.toSections(cascade);
+    }
+
+    /** Returns the number of lookups that found a cached design */
+    public synchronized long getHitCount(){
+        return hitCount;
+    }
+
+    /** Returns the number of lookups that had to design the filter */
+    public synchronized long getMissCount(){
+        return missCount;
+    }
+
+    /** Drops all designs and resets the counters */
+    public synchronized void clear(){
+        designs.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+}
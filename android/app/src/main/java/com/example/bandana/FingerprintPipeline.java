@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.List;
+
+/**
+ * The processing chain of one fingerprint window: high-pass, gait cycle detection and quantisation.
+ * MainService runs it on the captured sensor data and the evaluation module on recorded traces, so
+ * both produce the same fingerprints. The buffers are reused by every window; the returned
+ * quantisation and cycles are only valid until the next window is processed.
+ */
+public class FingerprintPipeline {
+
+    final int sampleRate;
+    final int numberOfGaitCycles;
+    final int bitsPerCycle;
+    int bitsPerWindow = 1;
+    final int gaitResampleRate;
+
+    boolean zeroPhase = false; // True if windows are filtered forward and backward instead of using the streamed output
+    Decimator decimator; // Reduces the rate between filtering and cycle detection, null to keep the sensor rate
+    int parallelism = 1; // Threads resampling the cycles of a window, see GaitCycleDetection.setParallelism
+    int parallelThreshold = 8;
+
+    final PipelineWorkspace workspace;
+    final ZeroPhaseFilter zeroPhaseHighPass;
+
+    GaitCycleMatrix cycles; // Cycles of the last window
+    List<Signal> detectedCycles; // The same cycles before resampling
+
+    // Durations of the stages of the last window in nanoseconds, decimation counts as filtering
+    long filterNanos;
+    long detectionNanos;
+    long quantizationNanos;
+
+    public FingerprintPipeline(int sampleRate, int windowSeconds, int numberOfGaitCycles, int bitsPerCycle, int gaitResampleRate){
+        this.sampleRate = sampleRate;
+        this.numberOfGaitCycles = numberOfGaitCycles;
+        this.bitsPerCycle = bitsPerCycle;
+        this.gaitResampleRate = gaitResampleRate;
+
+        workspace = new PipelineWorkspace(windowSeconds * sampleRate, gaitResampleRate);
+        zeroPhaseHighPass = new ZeroPhaseFilter(createHighPass());
+    }
+
+    /** Chooses between the streamed causal high-pass and a zero-phase pass over every window */
+    public void setZeroPhase(boolean zeroPhase){
+        this.zeroPhase = zeroPhase;
+    }
+
+    /**
+     * Detects the cycles at sampleRate / factor, which cuts the samples of the auto-correlation,
+     * minima search and resampling by the factor. Gait energy is mostly below 12 Hz, so a factor of
+     * 2 keeps it at a sensor rate of 50 Hz. A factor of 1 disables the decimation.
+     */
+    public void setDecimation(int factor){
+        decimator = factor == 1 ? null : new Decimator(factor);
+    }
+
+    /**
+     * Resamples the cycles of a window on up to parallelism threads once there are at least
+     * parallelThreshold of them, see GaitCycleDetection.setParallelism. The fingerprints do not
+     * depend on it.
+     */
+    public void setParallelism(int parallelism, int parallelThreshold){
+        this.parallelism = parallelism;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /** Sets the bits every window of a cycle yields, see Quantization.setBitsPerWindow */
+    public void setBitsPerWindow(int bitsPerWindow){
+        this.bitsPerWindow = bitsPerWindow;
+    }
+
+    /** Returns a new instance of the high-pass, Chebyshev II of order 5 with 10 dB attenuation below 0.5 Hz */
+    public BiquadCascade createHighPass(){
+        return FilterDesign.getShared().chebyshevII(FilterDesign.Band.HIGH_PASS, 5, sampleRate, 0.5, 10);
+    }
+
+    /** Returns a capture that filters its samples with the high-pass as they arrive */
+    public SensorCapture createCapture(int seconds){
+        return new SensorCapture(seconds * sampleRate, createHighPass());
+    }
+
+    /** Processes duration seconds of the capture, starting offset seconds in, and returns the generated fingerprint */
+    public Quantization process(SensorCapture capture, int offset, int duration){
+        int[] window = capture.getWindow(offset, duration);
+        int size = window[1] - window[0];
+
+        workspace.reset();
+        long start = System.nanoTime();
+
+        Signal filteredValues;
+
+        if(zeroPhase){
+            workspace.ensureWindow(size);
+            filteredValues = new Signal(workspace.filtered, 0, size);
+            zeroPhaseHighPass.filter(capture.samples, window[0], filteredValues.data, 0, size);
+        } else {
+            // Filtered while the samples were pushed
+            filteredValues = capture.getFiltered(window[0], window[1]);
+        }
+
+        if(decimator != null){
+            workspace.ensureWindow(size);
+            int length = decimator.decimate(filteredValues, workspace.decimated, 0);
+            filteredValues = new Signal(workspace.decimated, 0, length);
+        }
+
+        long filtered = System.nanoTime();
+
+        // The detection constants are given at 50 Hz, so they are scaled to the rate of the window even without decimation
+        int factor = decimator == null ? 1 : decimator.getFactor();
+        GaitCycleDetection detection = new GaitCycleDetection(filteredValues, numberOfGaitCycles, gaitResampleRate, 0, workspace);
+        detection.setSampleRate((double) sampleRate / factor);
+        detection.setParallelism(parallelism, parallelThreshold);
+
+        cycles = detection.detectCycles();
+        detectedCycles = detection.getDetectedCycles();
+
+        long detected = System.nanoTime();
+
+        Quantization quantization = new Quantization(cycles, bitsPerCycle, workspace);
+        quantization.setBitsPerWindow(bitsPerWindow);
+        quantization.generateFingerprint();
+
+        long quantized = System.nanoTime();
+
+        filterNanos = filtered - start;
+        detectionNanos = detected - filtered;
+        quantizationNanos = quantized - detected;
+
+        return quantization;
+    }
+
+    /** Returns the gait cycles of the last window */
+    public GaitCycleMatrix getCycles(){
+        return cycles;
+    }
+
+    /** Returns the gait cycles of the last window as they were detected, before resampling */
+    public List<Signal> getDetectedCycles(){
+        return detectedCycles;
+    }
+}
@@ -5,177 +5,227 @@
  */
 package com.example.bandana;
 
-import android.util.Log;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.lang.*;
-import org.jtransforms.fft.DoubleFFT_1D;
 
 public class GaitCycleDetection {
 
-    ArrayList<Double> filteredData; // Rotated and filtered data
+    static final int REFERENCE_RATE = 50; // Sample rate in Hz the constants below are given for
+    static final int MINIMA_RADIUS = 10; // Tolerance in samples around the expected position of the next minimum
+    static final int MAXIMA_ORDER = 15; // Default of maximaOrder, in samples
+
+    Signal filteredData; // Rotated and filtered data
     int numberOfGaitCycles, rightShiftHalfGaitCycles;
     int gaitResampleRate;
 
     boolean shortCycleExists = false; // true if a cycle with less than 40 samples is found
 
-    public GaitCycleDetection(ArrayList<Double> filteredData, int numberOfGaitCycles, int gaitResampleRate, int rightShiftHalfGaitCycles){
-        this.filteredData = new ArrayList<>(filteredData);
+    AutoCorrelation.Method correlationMethod = AutoCorrelation.Method.FFT;
+    int maximaOrder = MAXIMA_ORDER; // Neighbours on either side an auto-correlation maximum has to dominate
+    int minimaRadius = MINIMA_RADIUS;
+
+    int parallelism = 1; // Threads resampling the cycles, 1 resamples on the calling thread only
+    int parallelThreshold = 8; // Fewer cycles than this are always resampled sequentially
+
+    Resampler resampler;
+    PipelineWorkspace workspace;
+
+    ArrayList<Signal> cycles; // Detected cycles before resampling, views into filteredData
+
+    public GaitCycleDetection(Signal filteredData, int numberOfGaitCycles, int gaitResampleRate, int rightShiftHalfGaitCycles){
+        this(filteredData, numberOfGaitCycles, gaitResampleRate, rightShiftHalfGaitCycles, new PipelineWorkspace(filteredData.size(), gaitResampleRate));
+    }
+
+    /** Uses the buffers of the given workspace, the returned cycles are only valid until its next reset */
+    public GaitCycleDetection(Signal filteredData, int numberOfGaitCycles, int gaitResampleRate, int rightShiftHalfGaitCycles, PipelineWorkspace workspace){
+        this.filteredData = filteredData;
         this.numberOfGaitCycles = numberOfGaitCycles;
         this.gaitResampleRate = gaitResampleRate;
         this.rightShiftHalfGaitCycles = rightShiftHalfGaitCycles;
+        this.resampler = new Resampler(gaitResampleRate);
+        this.workspace = workspace;
+
+        workspace.ensureWindow(filteredData.size());
+    }
+
+    /** Selects how the auto-correlation is computed, DIRECT can be used to cross-check FFT results */
+    public void setCorrelationMethod(AutoCorrelation.Method correlationMethod){
+        this.correlationMethod = correlationMethod;
+    }
+
+    /**
+     * Scales the maxima order and minima radius from REFERENCE_RATE to the rate of the filtered
+     * data, e.g. after decimation, so they keep covering the same time span.
+     */
+    public void setSampleRate(double sampleRate){
+        maximaOrder = scale(MAXIMA_ORDER, sampleRate);
+        minimaRadius = scale(MINIMA_RADIUS, sampleRate);
+    }
+
+    /** Returns the number of samples at sampleRate covering the time of samples at REFERENCE_RATE, at least 1 */
+    static int scale(int samples, double sampleRate){
+        return Math.max(1, (int) Math.round(samples * sampleRate / REFERENCE_RATE));
+    }
+
+    /** Sets how many neighbours on either side an auto-correlation maximum has to dominate */
+    public void setMaximaOrder(int maximaOrder){
+        this.maximaOrder = maximaOrder;
+    }
+
+    /**
+     * Resamples the detected cycles on up to parallelism threads once there are at least
+     * parallelThreshold of them. The order of the returned cycles does not depend on it.
+     */
+    public void setParallelism(int parallelism, int parallelThreshold){
+        this.parallelism = parallelism;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /** Selects how the detected cycles are resampled to gaitResampleRate points */
+    public void setResamplerMode(Resampler.Mode mode){
+        resampler.setMode(mode);
     }
 
-    /** Finds the gait cycles in the given signal and returns a list of gait cycles */
-    public ArrayList<ArrayList<Double>> detectCycles(){
-        ArrayList<ArrayList<Double>> relativeMaxima = new ArrayList<>(getAutocorrelationMaxima());
-        ArrayList<Double> corrDistances = new ArrayList<>(getAutoCorrelationDistances(relativeMaxima));
-        ArrayList<Integer> minimaIndices = new ArrayList<>(filterDataMinima(corrDistances));
-        ArrayList<ArrayList<Double>> halfCycles = new ArrayList<>(split(minimaIndices));
-        ArrayList<ArrayList<Double>> cycles = new ArrayList<>();
+    /** Finds the gait cycles in the given signal and returns them resampled, one cycle per row */
+    public GaitCycleMatrix detectCycles(){
+        int minimaCount = filterDataMinima(estimateStepPeriod());
+
+        // The first minimum only anchors the search, shifting half cycles skips further ones
+        ArrayList<Signal> halfCycles = split(workspace.minima, 1 + rightShiftHalfGaitCycles, minimaCount);
+        cycles = new ArrayList<Signal>();
 
         for(int i = 0; i < halfCycles.size(); i+=2){
 
             if( i + 1 < halfCycles.size()){
-                ArrayList<Double> cycle = new ArrayList<Double>();
-                cycle.addAll(halfCycles.get(i));
-                cycle.addAll(halfCycles.get(i + 1));
-                cycles.add(cycle);
+                // Consecutive half cycles are adjacent in filteredData, so the full cycle is one view
+                Signal first = halfCycles.get(i);
+                cycles.add(new Signal(first.data, first.offset, first.length + halfCycles.get(i + 1).length));
             }
         }
 
-        ArrayList<ArrayList<Double>> cyclesResample = new ArrayList<ArrayList<Double>>();
+        GaitCycleMatrix cyclesResample = workspace.cycles;
+        cyclesResample.clear();
+        resampler.resampleAll(cycles, cyclesResample, parallelism, parallelThreshold);
 
-        for(int i = 0; i < cycles.size(); i++){
-            cyclesResample.add(resample(cycles.get(i), gaitResampleRate));
-        }
+        shortCycleExists = resampler.shortCycleExists;
 
         return cyclesResample;
     }
 
-    /** Returns a combined array of the local minima values and indices */
-    private ArrayList<ArrayList<Double>> getAutocorrelationMaxima(){
-        ArrayList<Double> autoCorrelation = new ArrayList<>(getAutoCorrelation());
+    /** Returns the cycles found by the last detectCycles before they were resampled */
+    public List<Signal> getDetectedCycles(){
+        return cycles;
+    }
 
-        ArrayList<Integer> relativeMaximaIndices = getRelativeMaxima(autoCorrelation, 15);
+    /**
+     * Estimates the number of samples between two consecutive data minima (one half gait cycle) from
+     * the mean distance of the auto-correlation maxima. GaitCycleSegmenter uses it to follow the
+     * minima of a stream without having the whole window.
+     */
+    public int estimateStepPeriod(){
+        int maximaCount = getAutocorrelationMaxima();
+        int distanceCount = getAutoCorrelationDistances(workspace.maxima, maximaCount);
 
-        ArrayList<Double> relativeMaximaValues = new ArrayList<>();
-        for(int i = 0; i < relativeMaximaIndices.size(); i++){
-            relativeMaximaValues.add(autoCorrelation.get(relativeMaximaIndices.get(i)));
-        }
+        return (int) Math.ceil(getMean(new Signal(workspace.distances, 0, distanceCount)));
+    }
 
-        ArrayList<ArrayList<Double>> relativeMaxima = new ArrayList<>();
-        for(int i = 0; i < relativeMaximaIndices.size(); i++){
-            ArrayList<Double> tuple = new ArrayList<>();
-            Integer obj = new Integer(relativeMaximaIndices.get(i));
-            tuple.add(obj.doubleValue());
-            tuple.add(relativeMaximaValues.get(i));
-            relativeMaxima.add(tuple);
-        }
+    /** Finds the local maxima of the auto-correlation, returns their number */
+    private int getAutocorrelationMaxima(){
+        double[] autoCorrelation = getAutoCorrelation();
 
-        return relativeMaxima;
+        return getRelativeMaxima(autoCorrelation, filteredData.size(), maximaOrder);
     }
 
     /** Implementation of auto-correlation algorithm */
-    private ArrayList<Double> getAutoCorrelation(){
-        ArrayList<Double> autoCorrelation = new ArrayList<>(filteredData);
+    private double[] getAutoCorrelation(){
         int size = filteredData.size();
+        double[] centered = workspace.centered;
         double mean = getMean(filteredData);
         double variance = getVariance(filteredData);
 
         for(int i = 0; i < size; i++){
-            autoCorrelation.set(i, autoCorrelation.get(i) - mean);
+            centered[i] = filteredData.get(i) - mean;
         }
 
-        autoCorrelation = getCorrelation(autoCorrelation);
+        double[] autoCorrelation = workspace.autoCorrelation;
+        AutoCorrelation.correlate(centered, size, correlationMethod, autoCorrelation, workspace.spectrum);
 
         for(int i = 0; i < size; i++){
-            autoCorrelation.set(i, autoCorrelation.get(i)/ ((size-i)*variance));
+            autoCorrelation[i] = autoCorrelation[i] / ((size-i)*variance);
         }
 
         return autoCorrelation;
     }
 
-    /** Computes and returns the correlation of the input signal */
-    private ArrayList<Double> getCorrelation(ArrayList<Double> input){
-        ArrayList<Double> result = new ArrayList<Double>();
-        double sum;
-
-        for (int i=0;i<input.size();i++) {
-            sum=0;
-
-            for (int j=0;j<input.size()-i;j++) {
-                sum+=input.get(j)*input.get(j+i);
-            }
-
-            result.add(sum);
-        }
-
-        return result;
-    }
-
-    /** Finds and returns the indices of the local maxima within a duration of 30 samples */
-    private ArrayList<Integer> getRelativeMaxima(ArrayList<Double> input, int order){
-        ArrayList<Integer> result = new ArrayList<Integer>();
-
-        int size = input.size();
+    /**
+     * Finds and returns the indices of the samples that are not smaller than any sample up to order
+     * indices before or after them (fewer at the borders of the input). The maximum of the sliding
+     * window is kept in a monotonic deque, so the cost does not depend on order. The indices are
+     * written to workspace.maxima and their number is returned.
+     */
+    private int getRelativeMaxima(double[] input, int size, int order){
+        int[] result = workspace.maxima;
+        int count = 0;
+
+        // Indices of the window with strictly decreasing values, the window maximum is at the head
+        int[] deque = workspace.deque;
+        int head = 0;
+        int tail = 0;
+        int next = 0;
 
         for(int i = 0; i < size; i++){
-            boolean isMaxima = true;
-            int plus = order;
-            int minus = order;
+            int last = Math.min(size - 1, i + order);
 
-            if(i < order){
-                minus = i;
-            }
+            while(next <= last){
+                double value = rank(input[next]);
 
-            else if( size - i - 1 < order){
-                plus = size - i - 1;
-            }
-
-            for(int j = 1; j <= plus; j++){
-                if(input.get(i) < input.get(i + j)){
-                    isMaxima = false;
-                    break;
+                while(tail > head && rank(input[deque[tail - 1]]) <= value){
+                    tail--;
                 }
+
+                deque[tail++] = next++;
             }
 
-            for(int j = 1; j <= minus; j++){
-                if(input.get(i) < input.get(i - j)){
-                    isMaxima = false;
-                    break;
-                }
+            while(deque[head] < i - order){
+                head++;
             }
 
-            if(isMaxima){
-                result.add(i);
+            if(!(input[i] < rank(input[deque[head]]))){
+                result[count++] = i;
             }
         }
 
-        return result;
+        return count;
+    }
+
+    /** NaN never compares larger than a sample, so it must not become the window maximum either */
+    private static double rank(double value){
+        return Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value;
     }
 
-    /** Finds and returns the distances between every local maxima in the input */
-    private ArrayList<Double> getAutoCorrelationDistances(ArrayList<ArrayList<Double>> input){
-        ArrayList<Double> output = new ArrayList<Double>();
+    /** Writes the distances between every local maxima in the input to workspace.distances, returns their number */
+    private int getAutoCorrelationDistances(int[] input, int count){
+        double[] output = workspace.distances;
 
-        for(int i = 0; i < input.size() - 1; i++){
+        for(int i = 0; i < count - 1; i++){
 
-            output.add(input.get(i+1).get(0) - input.get(i).get(0));
+            output[i] = input[i+1] - input[i];
         }
 
-        return output;
+        return Math.max(count - 1, 0);
     }
 
-    /** Finds and returns the indices of local minima with similar distances */
-    private ArrayList<Integer> filterDataMinima(ArrayList<Double> input){
-        int meanDistance = (int) Math.ceil(getMean(input));
-        int radius = 10;
+    /** Finds the indices of local minima with similar distances, writes them to workspace.minima and returns their number */
+    private int filterDataMinima(int meanDistance){
+        int radius = minimaRadius;
         int minRange = 0;
         int maxRange = meanDistance;
         int upTo;
 
-        ArrayList<Integer> minimaIndices = new ArrayList<>();
+        int[] minimaIndices = workspace.minima;
+        int count = 0;
 
         if(numberOfGaitCycles == 0){
             upTo = Integer.MAX_VALUE;
@@ -190,122 +240,47 @@ public class GaitCycleDetection {
                 break;
             }
 
-            ArrayList<Double> rangeRaw;
+            Signal rangeRaw;
 
             if(maxRange >= filteredData.size()){
                 maxRange = filteredData.size();
-                rangeRaw = new ArrayList<>(filteredData.subList(minRange, maxRange));
+                rangeRaw = filteredData.slice(minRange, maxRange);
             }
             else{
-                rangeRaw = new ArrayList<>(filteredData.subList(minRange, maxRange + 1));
+                rangeRaw = filteredData.slice(minRange, maxRange + 1);
             }
 
             int minimumIndex = getMinimum(rangeRaw) + minRange;
-            minimaIndices.add(minimumIndex);
+
+            if(count == minimaIndices.length){
+                minimaIndices = workspace.minima = Arrays.copyOf(minimaIndices, count * 2);
+            }
+            minimaIndices[count++] = minimumIndex;
 
             minRange = minimumIndex + meanDistance - radius;
             maxRange = minimumIndex + meanDistance + radius;
-
-            rangeRaw.clear();
         }
 
-        minimaIndices.remove(0);
-
-        minimaIndices = new ArrayList<>(minimaIndices.subList(rightShiftHalfGaitCycles, minimaIndices.size()));
-
-        return minimaIndices;
+        return count;
     }
 
-    /** Splits the input data according to the local minima indices */
-    private ArrayList<ArrayList<Double>> split(ArrayList<Integer> input){
-        ArrayList<ArrayList<Double>> output = new ArrayList<ArrayList<Double>>();
-
-        for(int i = 0; i < input.size() - 1; i++){
-            output.add(new ArrayList<>(filteredData.subList(input.get(i), input.get(i + 1))));
+    /** Splits the input data according to the local minima indices from (inclusive) to (exclusive) */
+    private ArrayList<Signal> split(int[] input, int from, int to){
+        if(from > to){
+            throw new IllegalArgumentException("only " + to + " minima found, " + from + " are skipped");
         }
 
-        return output;
-    }
-
-    /** Upsample method to complete cycles with less than 40 samples to 40 Hz */
-    private ArrayList<Double> upsample(ArrayList<Double> input, double newRate){
-        int inputLength = input.size();
-        double oldRate = inputLength;
-        int size = (int)(newRate/oldRate * inputLength);
-        ArrayList<Double> output = new ArrayList<Double>();
-
-        double dx = 1./oldRate;
-        double dX = 1./newRate;
-
-        output.add(input.get(0));
+        ArrayList<Signal> output = new ArrayList<Signal>();
 
-        double k = 0;
-        for (int i = 1; i < size - 1; i++) {
-            double X = i * dX;
-
-            int p = (int)(X/dx);
-            int q = p + 1;
-
-            k = (input.get(q) - input.get(p))/dx;
-            double x = p * dx;
-
-            output.add(i, input.get(p) + (X - x) * k);
+        for(int i = from; i < to - 1; i++){
+            output.add(filteredData.slice(input[i], input[i + 1]));
         }
 
-        output.add(size - 1, input.get(inputLength - 1) + ((size - 1) *dX - (inputLength -1)*dx) *k);
-
         return output;
     }
 
-    /** Resamples cycles to 40 Hz */
-    private ArrayList<Double> resample(ArrayList<Double> theInput, int resampleRate){
-        ArrayList<Double> resample = new ArrayList<Double>();
-        ArrayList<Double> input = new ArrayList<>(theInput);
-        Log.d(Constants.TAG, "resample theInput.size():  " + theInput.size());
-
-        if(input.size() < 40){
-            Log.d(Constants.TAG, "upsample cycle with  " + input.size());
-
-            shortCycleExists = true;
-            input = upsample(input, 40);
-        }
-
-        DoubleFFT_1D fftDo = new DoubleFFT_1D(input.size());
-        double[] fft = new double[input.size() * 2];
-
-        for(int i = 0; i < input.size(); i++){
-            fft[i] = input.get(i);
-        }
-
-        fftDo.realForwardFull(fft);
-
-        int newSize = Math.min(input.size(),resampleRate );
-        double[] resampleDouble = new double[newSize*2];
-
-        int firstHalf = (newSize+1)/2;
-        int secondHalf = newSize - firstHalf;
-
-        for(int i = 0; i < firstHalf * 2; i++){
-            resampleDouble[i] = fft[i];
-        }
-
-        for(int i = (firstHalf * 2), j = fft.length - (secondHalf * 2); (i < (newSize * 2) && j < fft.length); i++, j++){
-            resampleDouble[i] = fft[j];
-        }
-
-        fftDo = new DoubleFFT_1D(newSize);
-
-        fftDo.complexInverse(resampleDouble, true);
-
-        for(int i = 0; i < resampleDouble.length; i+=2){
-            resample.add(resampleDouble[i] * (float)resampleRate / (float) input.size());
-        }
-
-        return resample;
-    }
-
     /** Returns the index of the minimum value in the input*/
-    private int getMinimum(ArrayList<Double> input){
+    private int getMinimum(Signal input){
         int minIndex = 0;
 
         for(int i = 1; i < input.size(); i++){
@@ -318,21 +293,21 @@ public class GaitCycleDetection {
     }
 
     /** Returns the mean value of the input */
-    private double getMean(ArrayList<Double> input)
+    private double getMean(Signal input)
     {
         double sum = 0.0;
-        for(double a : input)
-            sum += a;
+        for(int i = 0; i < input.size(); i++)
+            sum += input.get(i);
         return sum/input.size();
     }
 
     /** Returns the variance of the input */
-    private double getVariance(ArrayList<Double> input)
+    private double getVariance(Signal input)
     {
         double mean = getMean(input);
         double temp = 0;
-        for(double a :input)
-            temp += (a-mean)*(a-mean);
+        for(int i = 0; i < input.size(); i++)
+            temp += (input.get(i)-mean)*(input.get(i)-mean);
         return temp/input.size();
     }
 }
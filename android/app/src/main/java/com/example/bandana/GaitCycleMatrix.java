@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+
+/**
+ * Resampled gait cycles stored row by row in a single array (cycles × points per cycle). Detection
+ * writes every cycle straight into its row and quantisation walks the array front to back.
+ */
+public class GaitCycleMatrix {
+
+    double[] data;
+    int rows;
+    final int columns;
+
+    public GaitCycleMatrix(int columns){
+        this(columns, 16);
+    }
+
+    public GaitCycleMatrix(int columns, int rowCapacity){
+        this.columns = columns;
+        this.data = new double[columns * Math.max(rowCapacity, 1)];
+    }
+
+    /** Returns the number of gait cycles */
+    public int getRows(){
+        return rows;
+    }
+
+    /** Returns the number of points per gait cycle */
+    public int getColumns(){
+        return columns;
+    }
+
+    /** Returns one point of one gait cycle */
+    public double get(int row, int column){
+        return data[row * columns + column];
+    }
+
+    /** Returns a view of one gait cycle */
+    public Signal getRow(int row){
+        if(row < 0 || row >= rows){
+            throw new IndexOutOfBoundsException("row " + row + " of " + rows);
+        }
+
+        return new Signal(data, row * columns, columns);
+    }
+
+    /** Appends count uninitialised rows and returns the index of the first one */
+    int addRows(int count){
+        int first = rows;
+
+        if((rows + count) * columns > data.length){
+            data = Arrays.copyOf(data, Math.max((rows + count) * columns, data.length * 2));
+        }
+
+        rows += count;
+
+        return first;
+    }
+
+    /** Removes all rows but keeps the allocated array for the next round */
+    public void clear(){
+        rows = 0;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder("[");
+
+        for(int i = 0; i < rows; i++){
+            if(i > 0){
+                builder.append(", ");
+            }
+            builder.append(getRow(i));
+        }
+
+        return builder.append(']').toString();
+    }
+}
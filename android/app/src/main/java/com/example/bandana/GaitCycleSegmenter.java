@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+
+/**
+ * Online version of GaitCycleDetection.detectCycles. Filtered samples are pushed one at a time and
+ * every resampled gait cycle is handed to the listener as soon as the minimum closing it is
+ * confirmed, i.e. when the last sample of its search range has arrived. The step period has to be
+ * known in advance, e.g. from GaitCycleDetection.estimateStepPeriod on a previous window.
+ */
+public class GaitCycleSegmenter {
+
+    interface OnCycleListener {
+        /** Called with every resampled gait cycle, in order, as a view of its row in the matrix */
+        void onCycle(Signal cycle);
+    }
+
+    int stepPeriod; // Samples between two consecutive minima
+    int minimaRadius = GaitCycleDetection.MINIMA_RADIUS;
+    int numberOfGaitCycles, rightShiftHalfGaitCycles;
+
+    Resampler resampler;
+    OnCycleListener listener;
+    GaitCycleMatrix cycles; // Every cycle emitted since the last reset
+
+    private double[] samples; // Samples from the start of the current cycle or search range on
+    private int count;
+
+    private int minRange; // Search range of the next minimum, both inclusive
+    private int maxRange;
+    private int minimumIndex; // Smallest sample within the search range seen so far, -1 if none
+
+    private int minimaCount; // Confirmed minima, including the ones skipped at the beginning
+    private int upTo; // Number of minima after which segmentation stops
+    private int cycleStart; // Minimum opening the current cycle, -1 before the first one
+
+    public GaitCycleSegmenter(int stepPeriod, int numberOfGaitCycles, int gaitResampleRate, int rightShiftHalfGaitCycles, OnCycleListener listener){
+        this.stepPeriod = stepPeriod;
+        this.numberOfGaitCycles = numberOfGaitCycles;
+        this.rightShiftHalfGaitCycles = rightShiftHalfGaitCycles;
+        this.resampler = new Resampler(gaitResampleRate);
+        this.listener = listener;
+        this.cycles = new GaitCycleMatrix(gaitResampleRate);
+        this.samples = new double[Math.max(stepPeriod, 1) * 4];
+
+        reset();
+    }
+
+    /** Scales the minima radius to the rate of the pushed samples, like GaitCycleDetection.setSampleRate */
+    public void setSampleRate(double sampleRate){
+        minimaRadius = GaitCycleDetection.scale(GaitCycleDetection.MINIMA_RADIUS, sampleRate);
+    }
+
+    /** Drops all samples and starts over with the search for the first minimum */
+    public void reset(){
+        count = 0;
+        resampler.shortCycleExists = false;
+        minRange = 0;
+        maxRange = stepPeriod;
+        minimumIndex = -1;
+        minimaCount = 0;
+        cycleStart = -1;
+        cycles.clear();
+
+        if(numberOfGaitCycles == 0){
+            upTo = Integer.MAX_VALUE;
+        }
+
+        else{
+            upTo = numberOfGaitCycles * 2 + 1 + 1 + rightShiftHalfGaitCycles;
+        }
+    }
+
+    /**
+     * Appends one filtered sample and emits a cycle if it confirms the closing minimum. Samples are
+     * no longer stored once the segmentation is finished.
+     */
+    public void push(double sample){
+        if(isFinished()){
+            return;
+        }
+
+        if(count == samples.length){
+            compact();
+        }
+
+        int index = count++;
+        samples[index] = sample;
+
+        if(index < minRange){
+            return;
+        }
+
+        if(minimumIndex < 0 || sample < samples[minimumIndex]){
+            minimumIndex = index;
+        }
+
+        if(index == maxRange){
+            confirmMinimum();
+        }
+    }
+
+    /**
+     * Ends the stream. A search range that was cut off by the end of the data is closed with the
+     * samples available, the same way filterDataMinima treats the end of a window.
+     */
+    public void finish(){
+        while(!isFinished() && minimumIndex >= 0){
+            confirmMinimum();
+        }
+    }
+
+    /** Returns true once the requested number of gait cycles has been segmented */
+    public boolean isFinished(){
+        return minimaCount >= upTo;
+    }
+
+    /** Returns the cycles emitted since the last reset */
+    public GaitCycleMatrix getCycles(){
+        return cycles;
+    }
+
+    /** Returns true if a cycle with less than 40 samples was upsampled */
+    public boolean shortCycleExists(){
+        return resampler.shortCycleExists;
+    }
+
+    /**
+     * Drops the samples before the current cycle and search range, which no later cycle can
+     * contain, and shifts the indices by the same amount. Only grows the array if less than half of
+     * it would be freed, so the samples kept stay bounded by a cycle and a search range however
+     * long the stream runs.
+     */
+    private void compact(){
+        int keep = cycleStart >= 0 ? Math.min(cycleStart, minRange) : minRange;
+        keep = Math.max(0, Math.min(keep, count));
+
+        if(keep < samples.length / 2){
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+
+        if(keep == 0){
+            return;
+        }
+
+        System.arraycopy(samples, keep, samples, 0, count - keep);
+        count -= keep;
+        minRange -= keep;
+        maxRange -= keep;
+
+        if(minimumIndex >= 0){
+            minimumIndex -= keep;
+        }
+
+        if(cycleStart >= 0){
+            cycleStart -= keep;
+        }
+    }
+
+    /** Records the minimum of the current range and sets up the range of the next one */
+    private void confirmMinimum(){
+        int minimum = minimumIndex;
+        int minimaUsed = minimaCount++ - 1 - rightShiftHalfGaitCycles;
+
+        // The first minimum only anchors the search, shifting half cycles skips further ones
+        if(minimaUsed >= 0 && minimaUsed % 2 == 0){
+            if(cycleStart >= 0){
+                int row = cycles.addRows(1);
+                resampler.resample(new Signal(samples, cycleStart, minimum - cycleStart), cycles.data, row * cycles.columns);
+                listener.onCycle(cycles.getRow(row));
+            }
+
+            cycleStart = minimum;
+        }
+
+        if(isFinished()){
+            return;
+        }
+
+        minRange = minimum + stepPeriod - minimaRadius;
+        maxRange = minimum + stepPeriod + minimaRadius;
+        minimumIndex = -1;
+
+        // Samples of the new range that have already arrived
+        for(int i = minRange; i < count; i++){
+            if(minimumIndex < 0 || samples[i] < samples[minimumIndex]){
+                minimumIndex = i;
+            }
+
+            if(i == maxRange){
+                confirmMinimum();
+                return;
+            }
+        }
+    }
+}
@@ -9,9 +9,10 @@ import java.util.ArrayList;
 
 public class LinearAcceleration {
 
+    static final double GYRO_MEAS_ERROR = Math.toRadians(40);
+    static final double BETA = Math.sqrt(3.0 / 4.0) * GYRO_MEAS_ERROR; // Filter gain, shared with LinearAccelerationBatch
+
     private double[] q = {1.0, 0.0, 0.0, 0.0};
-    private double gyroMeasError = Math.toRadians(40);
-    double beta = Math.sqrt(3.0 / 4.0) * gyroMeasError;
 
     public ArrayList<Double> calculateClean(ArrayList<ArrayList<Double>> acc, ArrayList<ArrayList<Double>> gyro, ArrayList<Long> timestamps){
 
@@ -39,6 +40,68 @@ public class LinearAcceleration {
         return rotatedAccelerations;
     }
 
+    /**
+     * Primitive version of calculateClean. The samples are interleaved x, y, z, sample i of acc and
+     * gyro starts at index 3 * i, the gyroscope in degrees per second as calculateClean takes it,
+     * and the vertical acceleration of samples 1 to length - 1 is written to out from outOffset on,
+     * gravity included as in calculateClean. Instead of going through pitch and roll, the
+     * acceleration is rotated by the quaternion itself: the vertical component is the third row of
+     * its rotation matrix times the vector, which is what the roll and pitch rotations of rotate_ccw
+     * reduce to, so no trigonometry and no allocation is needed per sample. Returns the number of
+     * values written.
+     */
+    public int calculate(double[] acc, double[] gyro, long[] timestamps, int length, double[] out, int outOffset){
+        for(int counter = 1; counter < length; counter++){
+            int i = 3 * counter;
+            double ax = acc[i];
+            double ay = acc[i + 1];
+            double az = acc[i + 2];
+
+            long deltat = (timestamps[counter] - timestamps[counter - 1]) * 1000;
+            out[outOffset + counter - 1] = fuse(ax, ay, az, Math.toRadians(gyro[i]), Math.toRadians(gyro[i + 1]), Math.toRadians(gyro[i + 2]), deltat);
+        }
+
+        return Math.max(length - 1, 0);
+    }
+
+    /**
+     * Updates the quaternions with one sample, the gyroscope in radians per second as Android reports
+     * it and deltat in microseconds, and returns its vertical acceleration
+     */
+    double fuse(double ax, double ay, double az, double gx, double gy, double gz, double deltat){
+        update_nomag(ax, ay, az, gx, gy, gz, deltat);
+
+        return rotateVertical(ax, ay, az);
+    }
+
+    /** Returns the vertical component of the vector rotated by the current quaternion */
+    private double rotateVertical(double x, double y, double z){
+        return rotateVertical(q, 0, 1, x, y, z);
+    }
+
+    /**
+     * Returns the vertical component of the vector rotated by the quaternion whose components are
+     * stored at offset, offset + stride, offset + 2 * stride and offset + 3 * stride of q
+     */
+    static double rotateVertical(double[] q, int offset, int stride, double x, double y, double z){
+        double q0 = q[offset];
+        double q1 = q[offset + stride];
+        double q2 = q[offset + 2 * stride];
+        double q3 = q[offset + 3 * stride];
+
+        return 2.0 * (q1 * q3 - q0 * q2) * x
+                + 2.0 * (q0 * q1 + q2 * q3) * y
+                + (q0 * q0 - q1 * q1 - q2 * q2 + q3 * q3) * z;
+    }
+
+    /** Sets the orientation back to the initial one, so that the next call starts a new trace */
+    public void reset(){
+        q[0] = 1.0;
+        q[1] = 0.0;
+        q[2] = 0.0;
+        q[3] = 0.0;
+    }
+
     /** Computes and returns the pitch angle using the updated quaternions*/
     private double getPitch(){
         return Math.toDegrees(-Math.asin(2.0 * (q[1] * q[3] - q[0] * q[2])));
@@ -52,20 +115,27 @@ public class LinearAcceleration {
 
     /** Updates the quaternions with the given accelerometer and gyroscope values */
     private void update_nomag(ArrayList<Double> accel, ArrayList<Double> gyro, double deltat){
+        update_nomag(accel.get(0), accel.get(1), accel.get(2),
+                Math.toRadians(gyro.get(0)), Math.toRadians(gyro.get(1)), Math.toRadians(gyro.get(2)), deltat);
+    }
 
-        double ax = accel.get(0);
-        double ay = accel.get(1);
-        double az = accel.get(2);
-
+    /** Updates the quaternions with one accelerometer and gyroscope sample, the gyroscope in radians per second */
+    private void update_nomag(double ax, double ay, double az, double gx, double gy, double gz, double deltat){
+        update_nomag(q, 0, 1, ax, ay, az, gx, gy, gz, deltat);
+    }
 
-        double gx = Math.toRadians(gyro.get(0));
-        double gy = Math.toRadians(gyro.get(1));
-        double gz = Math.toRadians(gyro.get(2));
+    /**
+     * One Madgwick step of the quaternion whose components are stored at offset, offset + stride,
+     * offset + 2 * stride and offset + 3 * stride of q, so that LinearAccelerationBatch can keep the
+     * quaternions of all its traces in one array. The gyroscope is in radians per second and deltat
+     * in microseconds. A zero accelerometer reading leaves the quaternion as it is.
+     */
+    static void update_nomag(double[] q, int offset, int stride, double ax, double ay, double az, double gx, double gy, double gz, double deltat){
 
-        double q1 = q[0];
-        double q2 = q[1];
-        double q3 = q[2];
-        double q4 = q[3];
+        double q1 = q[offset];
+        double q2 = q[offset + stride];
+        double q3 = q[offset + 2 * stride];
+        double q4 = q[offset + 3 * stride];
 
         /** Auxiliary variables to avoid repeated arithmetic */
         double _2q1 = 2 * q1;
@@ -105,10 +175,10 @@ public class LinearAcceleration {
         s4 *= norm;
 
         /** Compute rate of change of quaternion */
-        double qDot1 = 0.5 * (-q2 * gx - q3 * gy - q4 * gz) - beta * s1;
-        double qDot2 = 0.5 * (q1 * gx + q3 * gz - q4 * gy) - beta * s2;
-        double qDot3 = 0.5 * (q1 * gy - q2 * gz + q4 * gx) - beta * s3;
-        double qDot4 = 0.5 * (q1 * gz + q2 * gy - q3 * gx) - beta * s4;
+        double qDot1 = 0.5 * (-q2 * gx - q3 * gy - q4 * gz) - BETA * s1;
+        double qDot2 = 0.5 * (q1 * gx + q3 * gz - q4 * gy) - BETA * s2;
+        double qDot3 = 0.5 * (q1 * gy - q2 * gz + q4 * gx) - BETA * s3;
+        double qDot4 = 0.5 * (q1 * gz + q2 * gy - q3 * gx) - BETA * s4;
 
         /** Integrate to yield quaternion */
         deltat /= 1000000;
@@ -118,10 +188,10 @@ public class LinearAcceleration {
         q4 += qDot4 * deltat;
         norm = 1 / Math.sqrt(q1 * q1 + q2 * q2 + q3 * q3 + q4 * q4);    // normalise quaternion
 
-        q[0] = q1 * norm;
-        q[1] = q2 * norm;
-        q[2] = q3 * norm;
-        q[3] = q4 * norm;
+        q[offset] = q1 * norm;
+        q[offset + stride] = q2 * norm;
+        q[offset + 2 * stride] = q3 * norm;
+        q[offset + 3 * stride] = q4 * norm;
     }
 
     private ArrayList<Double> rotate_ccw(ArrayList<Double> vec, double pitch_angle, double roll_angle){
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * Orientation from the accelerometer and gyroscope alone, by the Madgwick filter of
+ * LinearAcceleration. The quaternion is kept across samples and, as in calculateClean, the first
+ * accelerometer sample only starts the filter and yields no vertical acceleration. Unlike
+ * calculateClean, which reads the gyroscope as degrees per second, the gyroscope is taken in
+ * radians per second as Android reports it.
+ */
+public class MadgwickFusion implements OrientationFusion {
+
+    private final LinearAcceleration linearAcceleration = new LinearAcceleration();
+
+    private double gyroX;
+    private double gyroY;
+    private double gyroZ;
+    private boolean hasGyroscope;
+
+    private long lastTimestamp = -1; // Time of the previous accelerometer sample, -1 before the first
+    private double vertical;
+
+    @Override
+    public void onGyroscope(double x, double y, double z){
+        gyroX = x;
+        gyroY = y;
+        gyroZ = z;
+        hasGyroscope = true;
+    }
+
+    /** Not needed, the accelerometer gives the direction of gravity */
+    @Override
+    public void onGravity(double x, double y, double z){
+    }
+
+    /** Not needed, the filter runs without magnetometer */
+    @Override
+    public void onMagneticField(double x, double y, double z){
+    }
+
+    @Override
+    public boolean onAcceleration(long timestamp, double x, double y, double z){
+        if(!hasGyroscope){
+            return false;
+        }
+
+        if(lastTimestamp < 0){
+            lastTimestamp = timestamp;
+            return false;
+        }
+
+        long deltat = (timestamp - lastTimestamp) * 1000;
+        lastTimestamp = timestamp;
+        vertical = linearAcceleration.fuse(x, y, z, gyroX, gyroY, gyroZ, deltat); // Radians per second
+
+        return true;
+    }
+
+    @Override
+    public double getVertical(){
+        return vertical;
+    }
+
+    @Override
+    public void reset(){
+        linearAcceleration.reset();
+        hasGyroscope = false;
+        lastTimestamp = -1;
+    }
+}
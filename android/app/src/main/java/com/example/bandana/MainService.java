@@ -39,8 +39,6 @@ import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.StringTokenizer;
 
-import uk.me.berndporr.iirj.ChebyshevII;
-
 public class MainService extends Service {
 
     Context context;
@@ -54,14 +52,24 @@ public class MainService extends Service {
     boolean dataExists = false; // True if pre-collected data will be used instead of sensor data
     boolean useBluetooth = true; //True if bluetooth is going to be used
     boolean sendReliability = true; // True if reliability will be sent
+    boolean zeroPhaseFilter = false; // True if the high-pass runs forward and backward, which removes its phase delay
+    boolean madgwickFusion = false; // True if the Madgwick filter instead of Android's rotation matrix gives the orientation
 
     BluetoothManager bManager;
 
     private final int NUMBER_OF_GAIT_CYCLES = 12; // The number of gait cycles to be extracted for one fingerprint
-    private final int BITS_PER_CYCLE = 4; // Number of bits to be generated from every cycle
+    private final int BITS_PER_CYCLE = 4; // Number of windows every cycle is split into
+    private final int BITS_PER_WINDOW = 1; // Number of bits to be generated from every window, 2 or 3 need fewer cycles
     private final int FP_DURATION = 18; // The duration of sensor data to be processed for one fingerprint
     private final int TOTAL_DURATION = 18; // Total duration of sensor reading
     private final int OFFSET = 9; // The offset to be shifted to get the next slice of sensor readings
+    private final int SAMPLE_RATE = 50; // Sensor sampling rate in Hz, matches the 20000 us listener delay
+    private final int GAIT_RESAMPLE_RATE = 40; // Number of points every gait cycle is resampled to
+    private final int DECIMATION_FACTOR = 1; // Cycles are detected at SAMPLE_RATE / DECIMATION_FACTOR, 2 keeps the gait band below 12.5 Hz
+
+    // Buffers and filters reused by every processData round instead of being allocated per fingerprint
+    private final FingerprintPipeline pipeline = new FingerprintPipeline(SAMPLE_RATE, FP_DURATION, NUMBER_OF_GAIT_CYCLES, BITS_PER_CYCLE, GAIT_RESAMPLE_RATE);
+    private SensorCapture capture;
 
     Intent notificationIntent;
     PendingIntent pendingIntent;
@@ -128,6 +136,11 @@ public class MainService extends Service {
         registered = true;
 
 
+        pipeline.setZeroPhase(zeroPhaseFilter);
+        pipeline.setDecimation(DECIMATION_FACTOR);
+        pipeline.setBitsPerWindow(BITS_PER_WINDOW);
+        capture = pipeline.createCapture(TOTAL_DURATION);
+
         toneGenerator = new ToneGenerator(AudioManager.STREAM_MUSIC, 100);
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
@@ -187,16 +200,31 @@ public class MainService extends Service {
     private void readSensor() {
         // Start sensor listening
         if (!dataExists) {
-            SensorListener sensorListener = new SensorListener(this, TOTAL_DURATION);
+            capture.reset();
+            SensorListener sensorListener = new SensorListener(this, TOTAL_DURATION, capture, createFusion());
             sensorListener.listen();
         }
 
-        // Read sensor data from file for testing
+        // Read sensor data from file for testing, the Madgwick filter replays the raw samples
         else {
+            if (madgwickFusion) {
+                readRaw();
+            } else {
+                readRotated();
+            }
+
             processData();
         }
     }
 
+    private OrientationFusion createFusion() {
+        if (madgwickFusion) {
+            return new MadgwickFusion();
+        }
+
+        return new RotationMatrixFusion();
+    }
+
     private void processData() {
         ArrayList<Double> otherReliability = null;
         boolean continueBandana = false;
@@ -206,8 +234,6 @@ public class MainService extends Service {
         for (int i = 0; i < (TOTAL_DURATION - FP_DURATION) / OFFSET + 1; i++) {
             continueBandana = false; //for next loop if that happened some day
 
-            ArrayList<Double> rotatedData = new ArrayList<>();
-
             // This is how the LinearAcceleration class is used
             /*ArrayList<ArrayList<Double>> accData = new ArrayList<>();
             ArrayList<ArrayList<Double>> gyroData = new ArrayList<>();
@@ -216,43 +242,16 @@ public class MainService extends Service {
             LinearAcceleration linearAcceleration = new LinearAcceleration();
             rotatedData = linearAcceleration.calculateClean(accData, gyroData, timestamps);*/
 
-            // Getting Android's rotated results
-            readSliceRotated(rotatedData, OFFSET * i, FP_DURATION);
-
-            Log.d(Constants.TAG, "rotatedData " + rotatedData);
-
             // Filter the data
 //            Filter filter = new Filter();
-//            ArrayList<Double> filteredValues = new ArrayList<>(filter.chebyBandpass(rotatedData));
-
-            ChebyshevII chebyshevII = new ChebyshevII();
-
-            ///center freq:
-            // https://electronics.stackexchange.com/a/234976
-            //sqrt(12/0.5) = 4.898979485566356
-            //0.5*4.8990 = 2.4495
-
-//            chebyshevII.bandPass(5, 50, 2.4495, 11.5 / 2.0, 1);
-            chebyshevII.highPass(5, 50, 0.5, 10);
-            ArrayList<Double> filteredValues = new ArrayList<>();
-            for (Double val : rotatedData) {
-                filteredValues.add(chebyshevII.filter(val));
-            }
-
-            Log.d(Constants.TAG, "filteredValues " + filteredValues);
-
-            GaitCycleDetection detection = new GaitCycleDetection(filteredValues, NUMBER_OF_GAIT_CYCLES, 40, 0);
-
-            ArrayList<ArrayList<Double>> gaitSequence = detection.detectCycles();
-            Log.d(Constants.TAG, "gaitSeq: " + gaitSequence);
-
-            // Generate fingerprints and reliabilities
-            Quantization quantization = new Quantization(gaitSequence, BITS_PER_CYCLE);
+//            Signal filteredValues = filter.chebyBandpass(rotatedData);
 
-            quantization.generateFingerprint();
+            // Android's rotated results were filtered while they were captured or read
+            Quantization quantization = pipeline.process(capture, OFFSET * i, FP_DURATION);
+            Log.d(Constants.TAG, "gaitSeq: " + pipeline.getCycles());
 
-            ArrayList<Integer> fingerprint = new ArrayList<>(quantization.getFingerprint());
-            ArrayList<Double> reliability = new ArrayList<>(quantization.getReliability());
+            PackedFingerprint fingerprint = quantization.getPackedFingerprint();
+            ArrayList<Double> reliability = quantization.getReliability(); // Boxed only to be sent
             Log.d(Constants.TAG, "fingerprint: " + fingerprint);
             Log.d(Constants.TAG, "reliability: " + reliability);
 
@@ -266,7 +265,15 @@ public class MainService extends Service {
                     break;
                 }
 
-                if (reliability.hashCode() < otherReliability.hashCode()) {
+                // selectFingerprint has no order for NaN, the merge sort it replaced had none either
+                if (otherReliability.contains(Double.NaN)) {
+                    EventBus.getDefault().post(new MessageEvent(MessageEvent.ProtocolState.ERROR, "otherReliability NaN"));
+                    break;
+                }
+
+                boolean useOtherReliability = reliability.hashCode() < otherReliability.hashCode();
+
+                if (useOtherReliability) {
                     reliability = otherReliability;
                     Log.d(Constants.TAG, "otherReliability used!");
                 }
@@ -274,13 +281,12 @@ public class MainService extends Service {
                 Log.d(Constants.TAG, "fingerprint.size(): " + fingerprint.size());
 
                 if (reliability.size() > fingerprint.size()) {
-                    Log.d(Constants.TAG, "reliability was larger than fingerprint! reliability cutted down");
-                    reliability = new ArrayList<>(reliability.subList(0, fingerprint.size()));
+                    Log.d(Constants.TAG, "reliability was larger than fingerprint! only the first " + fingerprint.size() + " are used");
                 }
 
                 if (fingerprint.size() > reliability.size()) {
                     Log.d(Constants.TAG, "fingerprint was larger than reliability! fingerprint cutted down");
-                    fingerprint = new ArrayList<>(fingerprint.subList(0, reliability.size()));
+                    fingerprint.truncate(reliability.size());
                 }
 
                 Log.d(Constants.TAG, "fingerprint.size(): " + fingerprint.size());
@@ -294,16 +300,28 @@ public class MainService extends Service {
                 }
 
                 // Sort fingerprint according to reliability
-                ArrayList<Integer> sortedFp = new ArrayList<Integer>(quantization.sortFingerprint(fingerprint, reliability, 32));
+                PackedFingerprint sortedFp;
+
+                if (useOtherReliability) {
+                    sortedFp = quantization.selectFingerprint(fingerprint, reliability, 32);
+                } else {
+                    sortedFp = quantization.selectFingerprint(fingerprint, quantization.getReliabilities(), fingerprint.size(), 32);
+                }
                 bManager.sendFingerprint(sortedFp);
-                ArrayList<Integer> otherSortedFp = bManager.getFingerprint();
+                PackedFingerprint otherSortedFp = bManager.getFingerprint();
 
                 if (otherSortedFp == null || otherSortedFp.size() == 0) {
                     EventBus.getDefault().post(new MessageEvent(MessageEvent.ProtocolState.ERROR, "otherSortedFp null"));
                     break;
                 }
 
-                double similarity = compareFingerprints(sortedFp, otherSortedFp);
+                // A shorter fingerprint would only be compared on the bits it has, so the peer has to send as many as we did
+                if (otherSortedFp.size() != sortedFp.size()) {
+                    EventBus.getDefault().post(new MessageEvent(MessageEvent.ProtocolState.BLOCK, "otherSortedFp.size() " + otherSortedFp.size() + " != " + sortedFp.size()));
+                    break;
+                }
+
+                double similarity = sortedFp.similarity(otherSortedFp);
 
                 if (similarity >= 0.70) {
                     EventBus.getDefault().post(new MessageEvent(MessageEvent.ProtocolState.SECURE, Double.toString(similarity)));
@@ -353,66 +371,49 @@ public class MainService extends Service {
         }
     }
 
-    private double compareFingerprints(ArrayList<Integer> fp1, ArrayList<Integer> fp2) {
-        int equalBitCount = 0;
-
-        for (int i = 0; i < fp1.size(); i++) {
-            if (fp1.get(i).equals(fp2.get(i))) {
-                equalBitCount++;
-            }
-        }
-
-        return (double) equalBitCount / fp1.size();
-    }
-
-    private String fingerprintToString(ArrayList<Integer> fingerprint) {
-        String fpString = "";
-
-        for (int i : fingerprint) {
-            fpString = fpString.concat(Integer.toString(i));
-        }
-
-        return fpString;
-    }
-
-    private void readSliceRotated(ArrayList<Double> accData, int offset, int size) {
-
+    /** Reads the recorded rotatedData file into the capture */
+    private void readRotated() {
         BufferedReader br = null;
         FileReader fr = null;
 
+        capture.reset();
+
         try {
             File file = new File(getFilesDir(), "rotatedData");
             fr = new FileReader(file);
             br = new BufferedReader(fr);
 
-            String sCurrentLine;
+            capture.read(br);
 
-            sCurrentLine = br.readLine();
-            StringTokenizer st = new StringTokenizer(sCurrentLine, ",");
-            long beginTime = Long.parseLong(st.nextElement().toString());
-            long curTime = beginTime;
+        } catch (IOException e) {
+            e.printStackTrace();
 
-            while (curTime < beginTime + offset * 1000 && sCurrentLine != null) {
-                sCurrentLine = br.readLine();
-                st = new StringTokenizer(sCurrentLine, ",");
-                curTime = Long.parseLong(st.nextElement().toString());
-            }
+        } finally {
+            try {
+                if (br != null)
+                    br.close();
 
-            beginTime = curTime;
+                if (fr != null)
+                    fr.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
 
+    /** Replays the recorded sensorData file through the Madgwick filter into the capture */
+    private void readRaw() {
+        BufferedReader br = null;
+        FileReader fr = null;
 
-            if (sCurrentLine == null) {
-                return;
-            }
+        capture.reset();
 
-            while (curTime < beginTime + size * 1000 && sCurrentLine != null) {
+        try {
+            File file = new File(getFilesDir(), "sensorData");
+            fr = new FileReader(file);
+            br = new BufferedReader(fr);
 
-                st = new StringTokenizer(sCurrentLine, ",");
-                Long timestamp = Long.parseLong(st.nextElement().toString());
-                accData.add(Double.parseDouble(st.nextElement().toString()));
-                curTime = timestamp;
-                sCurrentLine = br.readLine();
-            }
+            capture.readRaw(br, new MadgwickFusion());
 
         } catch (IOException e) {
             e.printStackTrace();
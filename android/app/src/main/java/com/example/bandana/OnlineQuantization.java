@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+
+/**
+ * Online version of Quantization.generateFingerprint, fed cycle by cycle, e.g. as the listener of
+ * a GaitCycleSegmenter. The mean gait cycle is kept as a running mean (Welford's update), and
+ * every arriving cycle immediately yields provisional bits against the mean of the cycles seen so
+ * far. Only the window sums of a cycle are kept, so finish() turns all provisional bits into the
+ * final ones against the complete mean in one pass over bitsPerCycle values per cycle. The final
+ * bits equal the ones of Quantization up to rounding.
+ */
+public class OnlineQuantization implements GaitCycleSegmenter.OnCycleListener {
+
+    final int columns;
+    final int bitsPerCycle;
+    final int windowSize; // Points per bit, trailing points that do not fill a window are ignored
+
+    double[] meanGaitCycle; // Running mean of every point
+    double[] windowSums; // Sum of every window of every cycle, bitsPerCycle per cycle
+    int cycles;
+    boolean finished;
+
+    PackedFingerprint fingerprint; // Provisional bits until finish() is called
+    double[] reliabilities;
+
+    public OnlineQuantization(int columns, int bitsPerCycle, int expectedCycles){
+        if(bitsPerCycle < 1 || bitsPerCycle > columns){
+            throw new IllegalArgumentException(bitsPerCycle + " bits do not fit cycles of " + columns + " points");
+        }
+
+        this.columns = columns;
+        this.bitsPerCycle = bitsPerCycle;
+        this.windowSize = columns / bitsPerCycle;
+
+        meanGaitCycle = new double[columns];
+        windowSums = new double[Math.max(expectedCycles, 1) * bitsPerCycle];
+        fingerprint = new PackedFingerprint(windowSums.length);
+        reliabilities = new double[windowSums.length];
+    }
+
+    /** Drops all cycles, the buffers keep their size */
+    public void reset(){
+        Arrays.fill(meanGaitCycle, 0.0);
+        fingerprint.clear();
+        cycles = 0;
+        finished = false;
+    }
+
+    /** Updates the mean with the cycle and appends its provisional bits */
+    @Override
+    public void onCycle(Signal cycle){
+        if(finished){
+            throw new IllegalStateException("cycle added after finish");
+        }
+
+        if(cycle.size() != columns){
+            throw new IllegalArgumentException("cycle of " + cycle.size() + " points, expected " + columns);
+        }
+
+        int bit = cycles * bitsPerCycle;
+
+        if(bit + bitsPerCycle > windowSums.length){
+            windowSums = Arrays.copyOf(windowSums, windowSums.length * 2);
+            reliabilities = Arrays.copyOf(reliabilities, windowSums.length);
+        }
+
+        cycles++;
+
+        double[] data = cycle.data;
+        int offset = cycle.offset;
+        double[] mean = meanGaitCycle;
+
+        for(int j = 0, k = 0; j < bitsPerCycle; j++){
+            double sum = 0;
+            double meanSum = 0;
+
+            for(int end = k + windowSize; k < end; k++){
+                double value = data[offset + k];
+                mean[k] += (value - mean[k]) / cycles;
+                sum += value;
+                meanSum += mean[k];
+            }
+
+            windowSums[bit + j] = sum;
+            setBit(bit + j, meanSum - sum);
+        }
+
+        // Points beyond the last window do not produce bits, but belong to the mean
+        for(int k = windowSize * bitsPerCycle; k < columns; k++){
+            mean[k] += (data[offset + k] - mean[k]) / cycles;
+        }
+    }
+
+    /**
+     * Replaces the provisional bits and reliabilities with the final ones against the mean of all
+     * cycles and returns how many bits changed. No further cycles can be added until reset.
+     */
+    public int finish(){
+        int changed = 0;
+
+        for(int j = 0; j < bitsPerCycle; j++){
+            double meanSum = 0;
+
+            for(int k = j * windowSize; k < (j + 1) * windowSize; k++){
+                meanSum += meanGaitCycle[k];
+            }
+
+            for(int bit = j; bit < cycles * bitsPerCycle; bit += bitsPerCycle){
+                int provisional = fingerprint.get(bit);
+                setBit(bit, meanSum - windowSums[bit]);
+
+                if(fingerprint.get(bit) != provisional){
+                    changed++;
+                }
+            }
+        }
+
+        finished = true;
+
+        return changed;
+    }
+
+    /** Writes bit i and its reliability from the sum of differences of its window to the mean */
+    private void setBit(int i, double sumOfDifferences){
+        if(i == fingerprint.size()){
+            fingerprint.add(0);
+        }
+
+        fingerprint.set(i, (sumOfDifferences > 0) ? 1:0);
+        reliabilities[i] = Math.abs(sumOfDifferences);
+    }
+
+    /** Returns the number of cycles added since the last reset */
+    public int getCycles(){
+        return cycles;
+    }
+
+    /** Returns true once finish() has made the bits final */
+    public boolean isFinished(){
+        return finished;
+    }
+
+    /** Returns the running mean gait cycle */
+    public double[] getMeanGaitCycle(){
+        return meanGaitCycle;
+    }
+
+    /** Returns the bits of all cycles so far, provisional until finish() is called */
+    public PackedFingerprint getFingerprint(){
+        return fingerprint;
+    }
+
+    /** Returns the reliability of every bit, only the first getFingerprint().size() are valid */
+    public double[] getReliabilities(){
+        return reliabilities;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * Streaming stage between the sensors and the capture that turns device relative samples into the
+ * vertical acceleration in the earth frame, one accelerometer sample at a time. Implementations
+ * keep their orientation between samples and allocate nothing per sample, so they can run in the
+ * sensor thread. Samples are passed as plain values, so recorded ones can be replayed on the JVM.
+ */
+public interface OrientationFusion {
+
+    /** Passes the latest gyroscope sample in radians per second, the unit of Android's TYPE_GYROSCOPE */
+    void onGyroscope(double x, double y, double z);
+
+    /** Passes the latest gravity sensor sample */
+    void onGravity(double x, double y, double z);
+
+    /** Passes the latest magnetic field sample */
+    void onMagneticField(double x, double y, double z);
+
+    /**
+     * Fuses an accelerometer sample taken at the given time in milliseconds. Returns true if
+     * getVertical() now holds its vertical acceleration, false if the orientation is not known yet.
+     */
+    boolean onAcceleration(long timestamp, double x, double y, double z);
+
+    /** Returns the vertical acceleration of the last fused sample, gravity included */
+    double getVertical();
+
+    /** Forgets the orientation and all samples, e.g. before a new capture */
+    void reset();
+}
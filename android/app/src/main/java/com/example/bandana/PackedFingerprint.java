@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fingerprint with 64 bits per long word, bit i is bit i % 64 of word i / 64. Bits beyond the
+ * length are always zero, so two fingerprints are compared by XOR-ing their words and counting
+ * the set bits, a few instructions for hundreds of bits.
+ */
+public class PackedFingerprint {
+
+    long[] words;
+    int length; // Number of bits
+
+    public PackedFingerprint(int capacity){
+        words = new long[Math.max(wordCount(capacity), 1)];
+    }
+
+    /** Packs a fingerprint with one bit per element */
+    public static PackedFingerprint fromBits(List<Integer> bits){
+        PackedFingerprint fingerprint = new PackedFingerprint(bits.size());
+
+        for(int bit : bits){
+            fingerprint.add(bit);
+        }
+
+        return fingerprint;
+    }
+
+    /** Returns the number of words holding the given number of bits */
+    static int wordCount(int bits){
+        return (bits + 63) >>> 6;
+    }
+
+    /** Removes all bits, the capacity is kept */
+    public void clear(){
+        Arrays.fill(words, 0, wordCount(length), 0L);
+        length = 0;
+    }
+
+    /** Appends a bit, any non-zero value is a 1 */
+    public void add(int bit){
+        if(length == words.length * 64){
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+
+        if(bit != 0){
+            words[length >>> 6] |= 1L << length;
+        }
+
+        length++;
+    }
+
+    /** Sets bit i, any non-zero value is a 1 */
+    public void set(int i, int bit){
+        if(i < 0 || i >= length){
+            throw new IndexOutOfBoundsException("bit " + i + " of " + length);
+        }
+
+        if(bit != 0){
+            words[i >>> 6] |= 1L << i;
+        } else {
+            words[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /** Returns bit i, 0 or 1 */
+    public int get(int i){
+        if(i < 0 || i >= length){
+            throw new IndexOutOfBoundsException("bit " + i + " of " + length);
+        }
+
+        return (int) (words[i >>> 6] >>> i) & 1;
+    }
+
+    /** Returns the number of bits */
+    public int size(){
+        return length;
+    }
+
+    /** Drops all bits from length on */
+    public void truncate(int length){
+        if(length >= this.length){
+            return;
+        }
+
+        int last = length >>> 6;
+
+        if((length & 63) != 0){
+            words[last] &= (1L << length) - 1;
+            last++;
+        }
+
+        Arrays.fill(words, last, wordCount(this.length), 0L);
+        this.length = length;
+    }
+
+    /** Returns the number of positions at which the fingerprints differ, both must have the same length */
+    public int distance(PackedFingerprint other){
+        if(length != other.length){
+            throw new IllegalArgumentException("cannot compare " + length + " bits with " + other.length);
+        }
+
+        int bits = length;
+        int full = bits >>> 6;
+        int distance = 0;
+
+        for(int i = 0; i < full; i++){
+            distance += Long.bitCount(words[i] ^ other.words[i]);
+        }
+
+        if((bits & 63) != 0){
+            distance += Long.bitCount((words[full] ^ other.words[full]) & ((1L << bits) - 1));
+        }
+
+        return distance;
+    }
+
+    /**
+     * Returns the fraction of equal bits, the measure MainService accepts a pairing by. Both must
+     * have the same length; two empty fingerprints have nothing in common and give 0.
+     */
+    public double similarity(PackedFingerprint other){
+        int distance = distance(other);
+
+        if(length == 0){
+            return 0;
+        }
+
+        return (double) (length - distance) / length;
+    }
+
+    /** Serialises the fingerprint as its bit count followed by its words, big endian */
+    public byte[] toBytes(){
+        int count = wordCount(length);
+        byte[] bytes = new byte[4 + count * 8];
+
+        writeInt(bytes, 0, length);
+
+        for(int i = 0; i < count; i++){
+            writeInt(bytes, 4 + i * 8, (int) (words[i] >>> 32));
+            writeInt(bytes, 8 + i * 8, (int) words[i]);
+        }
+
+        return bytes;
+    }
+
+    /** Reads a fingerprint written by toBytes */
+    public static PackedFingerprint fromBytes(byte[] bytes){
+        int length = readInt(bytes, 0);
+        int count = wordCount(length);
+
+        if(length < 0 || bytes.length < 4 + count * 8){
+            throw new IllegalArgumentException(bytes.length + " bytes do not hold a fingerprint of " + length + " bits");
+        }
+
+        PackedFingerprint fingerprint = new PackedFingerprint(length);
+
+        for(int i = 0; i < count; i++){
+            fingerprint.words[i] = ((long) readInt(bytes, 4 + i * 8) << 32) | (readInt(bytes, 8 + i * 8) & 0xffffffffL);
+        }
+
+        fingerprint.length = length;
+
+        // Keeps the bits beyond the length zero even if the sender did not
+        if((length & 63) != 0){
+            fingerprint.words[count - 1] &= (1L << length) - 1;
+        }
+
+        return fingerprint;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value){
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset){
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if(!(other instanceof PackedFingerprint)){
+            return false;
+        }
+
+        PackedFingerprint fingerprint = (PackedFingerprint) other;
+
+        return length == fingerprint.length && distance(fingerprint) == 0;
+    }
+
+    @Override
+    public int hashCode(){
+        return Arrays.hashCode(Arrays.copyOf(words, wordCount(length))) * 31 + length;
+    }
+
+    /** Returns the bits as a string of 0 and 1 */
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder(length);
+
+        for(int i = 0; i < length; i++){
+            builder.append(get(i));
+        }
+
+        return builder.toString();
+    }
+}
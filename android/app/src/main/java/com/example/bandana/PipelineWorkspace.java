@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * Buffers shared by the signal processing stages of one fingerprint window. They are allocated once
+ * for the expected window size, grow if a window turns out longer and are reused by every following
+ * round, so a long running session does not churn through a new set of arrays per fingerprint.
+ * Everything handed out by a stage (e.g. the cycle matrix) is only valid until the next reset.
+ */
+public class PipelineWorkspace {
+
+    double[] samples; // Rotated vertical acceleration of the window
+    double[] filtered; // Output of the filter stage
+    double[] decimated; // Filtered data at the reduced rate, if the pipeline decimates
+    double[] centered; // Mean-free filtered data, input of the auto-correlation
+    double[] spectrum; // Zero-padded FFT buffer of the auto-correlation
+    double[] autoCorrelation;
+    double[] distances; // Distances between the auto-correlation maxima
+    int[] maxima; // Indices of the auto-correlation maxima
+    int[] deque; // Sliding window of the maxima search
+    int[] minima; // Indices of the data minima
+    double[] meanGaitCycle;
+    PackedFingerprint fingerprint;
+    double[] reliabilities;
+    double[] differences; // Sum of differences to the mean cycle of every window
+    double[] sortedDifferences; // Ordered copy for the quantiles of the multi-bit quantisation
+    double[] thresholds; // Level boundaries of the multi-bit quantisation
+    GaitCycleMatrix cycles;
+
+    public PipelineWorkspace(int windowSamples, int gaitResampleRate){
+        samples = new double[windowSamples];
+        filtered = new double[windowSamples];
+        decimated = new double[windowSamples];
+        centered = new double[windowSamples];
+        spectrum = new double[AutoCorrelation.getPaddedLength(windowSamples)];
+        autoCorrelation = new double[windowSamples];
+        distances = new double[windowSamples];
+        maxima = new int[windowSamples];
+        deque = new int[windowSamples];
+        minima = new int[64];
+        meanGaitCycle = new double[gaitResampleRate];
+        fingerprint = new PackedFingerprint(256);
+        reliabilities = new double[256];
+        differences = new double[256];
+        sortedDifferences = new double[0];
+        thresholds = new double[0];
+        cycles = new GaitCycleMatrix(gaitResampleRate, 32);
+    }
+
+    /** Starts a new round, the buffers keep their size */
+    public void reset(){
+        cycles.clear();
+    }
+
+    /** Makes sure all per-sample buffers hold a window of the given length */
+    void ensureWindow(int length){
+        samples = ensure(samples, length);
+        filtered = ensure(filtered, length);
+        decimated = ensure(decimated, length);
+        centered = ensure(centered, length);
+        spectrum = ensure(spectrum, AutoCorrelation.getPaddedLength(length));
+        autoCorrelation = ensure(autoCorrelation, length);
+        distances = ensure(distances, length);
+        maxima = ensure(maxima, length);
+        deque = ensure(deque, length);
+    }
+
+    /** Returns array if it holds at least length elements, a larger replacement otherwise */
+    static double[] ensure(double[] array, int length){
+        if(array.length >= length){
+            return array;
+        }
+
+        return new double[Math.max(length, array.length * 2)];
+    }
+
+    /** Returns array if it holds at least length elements, a larger replacement otherwise */
+    static int[] ensure(int[] array, int length){
+        if(array.length >= length){
+            return array;
+        }
+
+        return new int[Math.max(length, array.length * 2)];
+    }
+}
@@ -6,105 +6,333 @@
 package com.example.bandana;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Quantization {
 
-    ArrayList<ArrayList<Double>> gaitSequence;
-    int bitsPerCycle;
-    ArrayList<Integer> fingerprint;
-    ArrayList<Double> reliability;
+    GaitCycleMatrix gaitSequence;
+    int bitsPerCycle; // Windows every cycle is split into
+    int bitsPerWindow = 1; // Bits of every window, more than 1 quantises the differences into Gray-coded levels
+    PackedFingerprint packedFingerprint; // bitsPerWindow bits per window of every cycle
+    double[] reliabilities; // Reliability of every bit, packedFingerprint.size() of them are valid
+    double[] meanGaitCycle;
+    double[] thresholds; // Level boundaries of the multi-bit quantisation, 1 to 2^bitsPerWindow - 1 are used
 
-    public Quantization(ArrayList<ArrayList<Double>> gaitSequence, int bitsPerCycle){
-        this.gaitSequence = new ArrayList<>(gaitSequence);
+    PipelineWorkspace workspace;
+
+    // Boxed copies of the outputs, only built when they are asked for
+    private ArrayList<Integer> fingerprint;
+    private ArrayList<Double> reliability;
+
+    public Quantization(GaitCycleMatrix gaitSequence, int bitsPerCycle){
+        this(gaitSequence, bitsPerCycle, new PipelineWorkspace(0, gaitSequence.columns));
+    }
+
+    /** Computes the mean gait cycle, fingerprint and reliabilities in the buffers of the given workspace */
+    public Quantization(GaitCycleMatrix gaitSequence, int bitsPerCycle, PipelineWorkspace workspace){
+        if(bitsPerCycle < 1 || bitsPerCycle > gaitSequence.columns){
+            throw new IllegalArgumentException(bitsPerCycle + " bits do not fit cycles of " + gaitSequence.columns + " points");
+        }
+
+        this.gaitSequence = gaitSequence;
         this.bitsPerCycle = bitsPerCycle;
-        fingerprint = new ArrayList<>();
-        reliability = new ArrayList<>();
+        this.workspace = workspace;
+        this.packedFingerprint = workspace.fingerprint;
+        this.meanGaitCycle = workspace.meanGaitCycle = PipelineWorkspace.ensure(workspace.meanGaitCycle, gaitSequence.columns);
+        this.reliabilities = workspace.reliabilities;
+    }
+
+    /**
+     * Sets the number of bits every window yields. With 1 a bit is the sign of the difference to
+     * the mean cycle. With b > 1 the differences of all windows are split into 2^b levels at their
+     * quantiles, so every level is equally likely, and the level is Gray-coded: neighbouring levels
+     * differ in one bit, so a difference close to a boundary costs at most one bit. Fewer cycles
+     * then give the same number of bits.
+     */
+    public void setBitsPerWindow(int bitsPerWindow){
+        if(bitsPerWindow < 1 || bitsPerWindow > 8){
+            throw new IllegalArgumentException(bitsPerWindow + " bits per window, 1 to 8 are supported");
+        }
+
+        this.bitsPerWindow = bitsPerWindow;
     }
 
-    /** Generates the fingerprint and reliability arrays from the given gaitSequence array */
+    /**
+     * Generates the fingerprint and reliabilities from the given gaitSequence array without
+     * allocating. Every gait cycle is split into bitsPerCycle windows of columns / bitsPerCycle
+     * points (trailing points that do not fill a window are ignored, so any bitsPerCycle up to the
+     * number of columns works) and each window yields bitsPerWindow bits from the sum of its
+     * differences to the mean cycle. A row is walked once with one running sum that is emitted and
+     * restarted at every window boundary. Cycles with NaN or infinite points are rejected, as their
+     * bits and reliabilities would be meaningless and selectFingerprint could not order them.
+     */
     public void generateFingerprint(){
-        ArrayList<Double> meanGaitCycle = calculateMeanGaitCycle();
+        double[] meanGaitCycle = calculateMeanGaitCycle();
+        double[] data = gaitSequence.data;
+        int columns = gaitSequence.columns;
+        int windowSize = columns / bitsPerCycle;
+        int used = windowSize * bitsPerCycle;
+        int windows = gaitSequence.rows * bitsPerCycle;
+        int window = 0;
+
+        double[] differences = workspace.differences = PipelineWorkspace.ensure(workspace.differences, windows);
+        reliabilities = workspace.reliabilities = PipelineWorkspace.ensure(workspace.reliabilities, windows * bitsPerWindow);
+
+        for(int row = 0; row < gaitSequence.rows * columns; row += columns){
+            double sumOfDifferences = 0;
+
+            for(int k = 0, end = windowSize; k < used; k++){
+                sumOfDifferences += meanGaitCycle[k] - data[row + k];
+
+                if(k + 1 == end){
+                    if(sumOfDifferences != sumOfDifferences){
+                        throw new IllegalArgumentException("the gait cycles have NaN or infinite points");
+                    }
+
+                    differences[window++] = sumOfDifferences;
+                    sumOfDifferences = 0;
+                    end += windowSize;
+                }
+            }
+        }
 
-        ArrayList<ArrayList<Double>> windowsMeanGaitCycle = split(meanGaitCycle, bitsPerCycle);
+        packedFingerprint.clear();
 
-        for(int i = 0; i < gaitSequence.size(); i++){
-            ArrayList<ArrayList<Double>> windowsGaitCycle = split(gaitSequence.get(i), bitsPerCycle);
+        if(bitsPerWindow == 1){
+            for(int i = 0; i < windows; i++){
+                reliabilities[i] = Math.abs(differences[i]);
+                packedFingerprint.add((differences[i] > 0) ? 1:0);
+            }
+        } else {
+            quantizeLevels(differences, windows);
+        }
 
-            for( int j = 0; j < bitsPerCycle; j++){
+        this.fingerprint = null;
+        this.reliability = null;
+    }
 
-                double sumOfDifferences = getDifferenceSum(windowsMeanGaitCycle.get(j), windowsGaitCycle.get(j));
+    /**
+     * Writes the Gray code of the level of every difference, most significant bit first. The
+     * reliability of a bit is the distance of the difference to the nearest boundary at which that
+     * bit of the code changes; between level m - 1 and m that is the bit of the lowest set bit of m.
+     */
+    private void quantizeLevels(double[] differences, int windows){
+        int levels = 1 << bitsPerWindow;
+
+        double[] thresholds = this.thresholds = workspace.thresholds = PipelineWorkspace.ensure(workspace.thresholds, levels);
+
+        double[] sorted = workspace.sortedDifferences = PipelineWorkspace.ensure(workspace.sortedDifferences, windows);
+        System.arraycopy(differences, 0, sorted, 0, windows);
+        Arrays.sort(sorted, 0, windows);
+
+        for(int m = 1; m < levels; m++){
+            thresholds[m] = getQuantile(sorted, windows, (double) m / levels);
+        }
 
-                int bit = (sumOfDifferences > 0) ? 1:0;
-                reliability.add(Math.abs(sumOfDifferences));
-                fingerprint.add(bit);
+        for(int i = 0, bit = 0; i < windows; i++){
+            double difference = differences[i];
+            int level = 0;
+
+            while(level + 1 < levels && difference > thresholds[level + 1]){
+                level++;
+            }
+
+            int gray = level ^ (level >>> 1);
+
+            for(int j = bitsPerWindow - 1; j >= 0; j--, bit++){
+                double distance = Double.POSITIVE_INFINITY;
+
+                for(int m = 1 << j; m < levels; m += 2 << j){
+                    distance = Math.min(distance, Math.abs(difference - thresholds[m]));
+                }
+
+                reliabilities[bit] = distance;
+                packedFingerprint.add((gray >>> j) & 1);
             }
         }
     }
 
-    /** Calculates the mean gait cycle of all gait cycles */
-    private  ArrayList<Double> calculateMeanGaitCycle(){
-        ArrayList<Double> meanGaitCycle = new ArrayList<Double>();
+    /** Returns the value below which the fraction q of the length sorted values lies, interpolated between neighbours */
+    private static double getQuantile(double[] sorted, int length, double q){
+        if(length == 0){
+            return 0;
+        }
+
+        double position = Math.min(Math.max(q * length - 0.5, 0), length - 1);
+        int low = (int) position;
+        int high = Math.min(low + 1, length - 1);
+
+        return sorted[low] + (position - low) * (sorted[high] - sorted[low]);
+    }
 
-        for(int i = 0; i < gaitSequence.get(0).size(); i++){
-            ArrayList<Double> correspondingPoints = new ArrayList<>();
+    /** Calculates the mean gait cycle of all gait cycles in one pass over the matrix */
+    private double[] calculateMeanGaitCycle(){
+        double[] data = gaitSequence.data;
+        int columns = gaitSequence.columns;
+        double[] meanGaitCycle = this.meanGaitCycle;
+        Arrays.fill(meanGaitCycle, 0, columns, 0.0);
 
-            for(int j = 0; j < gaitSequence.size(); j++){
-                correspondingPoints.add(gaitSequence.get(j).get(i));
+        for(int i = 0; i < gaitSequence.rows * columns; i += columns){
+            for(int j = 0; j < columns; j++){
+                meanGaitCycle[j] += data[i + j];
             }
+        }
 
-            meanGaitCycle.add(getMean(correspondingPoints));
+        for(int j = 0; j < columns; j++){
+            meanGaitCycle[j] /= gaitSequence.rows;
         }
 
         return meanGaitCycle;
     }
 
-    /** Computes and returns the mean value of the input array */
-    private double getMean(ArrayList<Double> input)
-    {
-        double sum = 0.0;
-        for(double a : input)
-            sum += a;
-        return sum/input.size();
+    /** Returns the fingerprint array, boxed copy of the packed fingerprint */
+    public ArrayList<Integer> getFingerprint(){
+        if(fingerprint == null){
+            fingerprint = new ArrayList<>(packedFingerprint.size());
+
+            for(int i = 0; i < packedFingerprint.size(); i++){
+                fingerprint.add(packedFingerprint.get(i));
+            }
+        }
+
+        return fingerprint;
+    }
+
+    /** Returns the fingerprint packed 64 bits per word */
+    public PackedFingerprint getPackedFingerprint(){
+        return packedFingerprint;
     }
 
-    /** Splits the input array into given number of equal partitions */
-    public ArrayList<ArrayList<Double>> split(ArrayList<Double> list, int partitionNumber){
-        ArrayList<ArrayList<Double>> splittedList = new ArrayList<ArrayList<Double>>();
+    /** Returns the reliability array, boxed copy of the reliabilities */
+    public ArrayList<Double> getReliability(){
+        if(reliability == null){
+            reliability = new ArrayList<>(packedFingerprint.size());
 
-        for(int i = 0; i < partitionNumber; i++){
-            ArrayList<Double> window = new ArrayList<Double>();
-            for(int j = 0; j < list.size()/partitionNumber; j++){
-                window.add(list.get(i * (list.size()/partitionNumber) + j));
+            for(int i = 0; i < packedFingerprint.size(); i++){
+                reliability.add(reliabilities[i]);
             }
-            splittedList.add(window);
         }
 
-        return splittedList;
+        return reliability;
+    }
+
+    /** Returns the reliability of every bit, only the first getPackedFingerprint().size() are valid */
+    public double[] getReliabilities(){
+        return reliabilities;
     }
 
-    /** Returns the sum of the differences of every element in the given arrays */
-    private double getDifferenceSum(ArrayList<Double> list1, ArrayList<Double> list2){
-        double sum = 0;
 
-        for(int i = 0; i < list1.size(); i++){
-            sum += list1.get(i) - list2.get(i);
+    /**
+     * Returns the fingerprintSize most reliable bits, most reliable first, in the order
+     * sortFingerprint yields: bits of equal reliability keep their original order. Unlike the sort
+     * it only selects, in O(n log fingerprintSize) time, and fewer bits are returned if there are.
+     * A NaN reliability, e.g. received from the other device, throws IllegalArgumentException.
+     */
+    public PackedFingerprint selectFingerprint(PackedFingerprint fp, List<Double> rel, int fingerprintSize){
+        int length = Math.min(fp.size(), rel.size());
+        double[] reliability = new double[length];
+
+        for(int i = 0; i < length; i++){
+            reliability[i] = rel.get(i);
         }
 
-        return sum;
+        return selectFingerprint(fp, reliability, length, fingerprintSize);
+    }
+
+    /** Like selectFingerprint on lists, with the first length reliabilities of a primitive array */
+    public PackedFingerprint selectFingerprint(PackedFingerprint fp, double[] reliability, int length, int fingerprintSize){
+        length = Math.min(fp.size(), length);
+        int[] indices = new int[Math.min(fingerprintSize, length)];
+        int count = selectMostReliable(reliability, length, fingerprintSize, indices);
+        PackedFingerprint selected = new PackedFingerprint(count);
+
+        for(int i = 0; i < count; i++){
+            selected.add(fp.get(indices[i]));
+        }
 
+        return selected;
     }
 
-    /** Returns the fingerprint array */
-    public ArrayList<Integer> getFingerprint(){
-        return fingerprint;
+    /**
+     * Writes the indices of the k largest of the first length reliabilities to indices, largest
+     * first and equal ones by ascending index, and returns their number. A bounded heap holds the
+     * k best indices seen so far with the worst on top, so every further candidate costs one
+     * comparison plus log k if it gets in. NaN is rejected: the merge of sortFingerprint does not
+     * order it consistently, so no selection could match the sort.
+     */
+    static int selectMostReliable(double[] reliability, int length, int k, int[] indices){
+        int size = 0;
+
+        for(int i = 0; i < length && k > 0; i++){
+            if(reliability[i] != reliability[i]){
+                throw new IllegalArgumentException("reliability " + i + " is NaN");
+            }
+
+            if(size < k){
+                // Sift the new index up from the bottom of the heap
+                int child = size++;
+
+                while(child > 0){
+                    int parent = (child - 1) >>> 1;
+
+                    if(!ranksBefore(reliability, indices[parent], i)){
+                        break;
+                    }
+
+                    indices[child] = indices[parent];
+                    child = parent;
+                }
+
+                indices[child] = i;
+            } else if(ranksBefore(reliability, i, indices[0])){
+                siftDown(reliability, indices, i, size);
+            }
+        }
+
+        // Repeatedly move the worst remaining index behind the heap, which leaves them best first
+        for(int end = size - 1; end > 0; end--){
+            int worst = indices[0];
+            siftDown(reliability, indices, indices[end], end);
+            indices[end] = worst;
+        }
+
+        return size;
     }
 
-    /** Returns the reliability array */
-    public ArrayList<Double> getReliability(){
-        return reliability;
+    /** Replaces the top of the heap of size indices with index and restores the heap */
+    private static void siftDown(double[] reliability, int[] indices, int index, int size){
+        int parent = 0;
+
+        while(true){
+            int child = 2 * parent + 1;
+
+            if(child >= size){
+                break;
+            }
+
+            if(child + 1 < size && ranksBefore(reliability, indices[child], indices[child + 1])){
+                child++;
+            }
+
+            if(!ranksBefore(reliability, index, indices[child])){
+                break;
+            }
+
+            indices[parent] = indices[child];
+            parent = child;
+        }
+
+        indices[parent] = index;
     }
 
+    /** Returns true if bit a is selected before bit b, i.e. it is more reliable or equally reliable and earlier */
+    private static boolean ranksBefore(double[] reliability, int a, int b){
+        double x = reliability[a];
+        double y = reliability[b];
+
+        return x > y || (x == y && a < b);
+    }
 
     /** Mergesort algorithm to sort the fingerprint array according to the reliability array */
     public List<Integer> sortFingerprint(ArrayList<Integer> fp, ArrayList<Double> rel, int fingerprintSize){
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Resamples gait cycles of arbitrary length to a fixed number of points */
+public class Resampler {
+
+    enum Mode {
+        FFT, // Truncates the spectrum, cycles shorter than 40 samples are upsampled first
+        TIME_DOMAIN // Windowed-sinc interpolation, maps any cycle length in a single pass
+    }
+
+    int resampleRate;
+    Mode mode = Mode.FFT;
+
+    boolean shortCycleExists = false; // true if a cycle with less than 40 samples is found since the last resampleAll
+
+    FftPlanCache planCache = FftPlanCache.getShared();
+
+    /** Work arrays of one thread, grown on demand and reused by every following cycle */
+    private static final class Scratch {
+        double[] upsampled = new double[40];
+    }
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>(){
+        @Override
+        protected Scratch initialValue(){
+            return new Scratch();
+        }
+    };
+
+    // Worker threads shared by all resamplers, only ever grown so that no caller finds it shut down
+    private static ThreadPoolExecutor pool;
+
+    public Resampler(int resampleRate){
+        this.resampleRate = resampleRate;
+    }
+
+    /**
+     * Resamples all cycles into new rows of the matrix, in input order. With a parallelism above one
+     * and at least parallelThreshold cycles, contiguous chunks of cycles are resampled on worker
+     * threads while the calling thread takes the first chunk; otherwise everything runs on the
+     * calling thread.
+     */
+    public void resampleAll(final List<Signal> cycles, final GaitCycleMatrix matrix, int parallelism, int parallelThreshold){
+        final int firstRow = matrix.addRows(cycles.size());
+        shortCycleExists = false;
+        int chunks = Math.min(parallelism, cycles.size());
+
+        if(chunks <= 1 || cycles.size() < parallelThreshold){
+            resampleRange(cycles, matrix, firstRow, 0, cycles.size());
+            return;
+        }
+
+        ThreadPoolExecutor executor = getPool(parallelism);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for(int chunk = 1; chunk < chunks; chunk++){
+            final int from = chunk * cycles.size() / chunks;
+            final int to = (chunk + 1) * cycles.size() / chunks;
+
+            futures.add(executor.submit(new Callable<Void>(){
+                @Override
+                public Void call(){
+                    resampleRange(cycles, matrix, firstRow, from, to);
+                    return null;
+                }
+            }));
+        }
+
+        resampleRange(cycles, matrix, firstRow, 0, cycles.size() / chunks);
+
+        try {
+            for(Future<?> future : futures){
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resampling cycles", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Resampling a cycle failed", e.getCause());
+        }
+    }
+
+    /** Resamples cycles from (inclusive) to (exclusive) into the matrix rows following firstRow */
+    private void resampleRange(List<Signal> cycles, GaitCycleMatrix matrix, int firstRow, int from, int to){
+        for(int i = from; i < to; i++){
+            resample(cycles.get(i), matrix.data, (firstRow + i) * matrix.columns);
+        }
+    }
+
+    /**
+     * Returns the shared worker pool with at least parallelism - 1 threads. A larger parallelism
+     * grows the pool in place; it is never shrunk or shut down, as other threads may be resampling
+     * on it at the same time.
+     */
+    private static synchronized ThreadPoolExecutor getPool(int parallelism){
+        int threads = parallelism - 1;
+
+        if(pool == null){
+            pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable runnable){
+                    Thread thread = new Thread(runnable, "Resampler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else if(pool.getMaximumPoolSize() < threads){
+            // The maximum has to grow first, it may never be below the core size
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        }
+
+        return pool;
+    }
+
+    /** Selects the resampling algorithm, see compareModes for how far the two agree */
+    public void setMode(Mode mode){
+        this.mode = mode;
+    }
+
+    /** Linearly upsamples short cycles to newRate samples before the FFT, returns the new size */
+    private int upsample(Signal input, double newRate, double[] output){
+        int inputLength = input.size();
+        double oldRate = inputLength;
+        int size = (int)(newRate/oldRate * inputLength);
+
+        double dx = 1./oldRate;
+        double dX = 1./newRate;
+
+        output[0] = input.get(0);
+
+        double k = 0;
+        for (int i = 1; i < size - 1; i++) {
+            double X = i * dX;
+
+            int p = (int)(X/dx);
+            int q = p + 1;
+
+            k = (input.get(q) - input.get(p))/dx;
+            double x = p * dx;
+
+            output[i] = input.get(p) + (X - x) * k;
+        }
+
+        output[size - 1] = input.get(inputLength - 1) + ((size - 1) *dX - (inputLength -1)*dx) *k;
+
+        return size;
+    }
+
+    /** Resamples a cycle to resampleRate points */
+    public Signal resample(Signal theInput){
+        Signal resample = new Signal(resampleRate);
+        resample(theInput, resample.data, 0);
+        return resample;
+    }
+
+    /**
+     * Resamples a cycle into the resampleRate elements of output starting at outputOffset. The
+     * FFT mode applies the cached DftKernel of the cycle length, which keeps the same part of the
+     * spectrum as transforming with JTransforms did but, unlike its transforms of lengths that are
+     * not a power of two, needs no scratch array. Short cycles are upsampled into a buffer reused
+     * per thread, so once every cycle length has been seen this does not allocate.
+     */
+    public void resample(Signal theInput, double[] output, int outputOffset){
+        if(mode == Mode.TIME_DOMAIN){
+            if(theInput.size() < 40){
+                shortCycleExists = true;
+            }
+
+            SincKernel.get(theInput.size(), resampleRate).apply(theInput.data, theInput.offset, output, outputOffset);
+            return;
+        }
+
+        Scratch buffers = scratch.get();
+        double[] input = theInput.data;
+        int inputOffset = theInput.offset;
+        int inputSize = theInput.size();
+
+        // Every cycle has to fill a whole row, so the FFT needs at least resampleRate samples
+        int minimumSize = Math.max(40, resampleRate);
+
+        if(inputSize < minimumSize){
+            shortCycleExists = true;
+            buffers.upsampled = PipelineWorkspace.ensure(buffers.upsampled, minimumSize);
+            inputSize = upsample(theInput, minimumSize, buffers.upsampled);
+            input = buffers.upsampled;
+            inputOffset = 0;
+        }
+
+        // Equal to transforming, truncating the spectrum to resampleRate points and transforming back
+        planCache.getKernel(inputSize, resampleRate).apply(input, inputOffset, output, outputOffset);
+    }
+
+    /** Differences between the two resampling modes on the same cycles */
+    static class Comparison {
+        int cycles;
+        double maxError; // Largest absolute difference of a resampled point
+        double rmsError;
+        double bitAgreement; // Share of fingerprint bits that are the same for both modes
+
+        @Override
+        public String toString(){
+            return "cycles " + cycles + ", max error " + maxError + ", rms error " + rmsError + ", bit agreement " + bitAgreement;
+        }
+    }
+
+    /** Resamples the cycles in both modes and compares the points and the resulting fingerprints */
+    public static Comparison compareModes(List<Signal> cycles, int resampleRate, int bitsPerCycle){
+        Resampler fft = new Resampler(resampleRate);
+        Resampler timeDomain = new Resampler(resampleRate);
+        timeDomain.setMode(Mode.TIME_DOMAIN);
+
+        GaitCycleMatrix fftCycles = new GaitCycleMatrix(resampleRate, cycles.size());
+        GaitCycleMatrix timeDomainCycles = new GaitCycleMatrix(resampleRate, cycles.size());
+        fft.resampleAll(cycles, fftCycles, 1, Integer.MAX_VALUE);
+        timeDomain.resampleAll(cycles, timeDomainCycles, 1, Integer.MAX_VALUE);
+
+        Comparison comparison = new Comparison();
+        comparison.cycles = cycles.size();
+        double squaredSum = 0;
+        int points = 0;
+
+        for(int i = 0; i < cycles.size() * resampleRate; i++){
+            double error = Math.abs(fftCycles.data[i] - timeDomainCycles.data[i]);
+            comparison.maxError = Math.max(comparison.maxError, error);
+            squaredSum += error * error;
+            points++;
+        }
+
+        comparison.rmsError = points > 0 ? Math.sqrt(squaredSum / points) : 0;
+
+        if(cycles.size() > 0){
+            Quantization fftQuantization = new Quantization(fftCycles, bitsPerCycle);
+            Quantization timeDomainQuantization = new Quantization(timeDomainCycles, bitsPerCycle);
+            fftQuantization.generateFingerprint();
+            timeDomainQuantization.generateFingerprint();
+
+            comparison.bitAgreement = fftQuantization.getPackedFingerprint().similarity(timeDomainQuantization.getPackedFingerprint());
+        }
+
+        return comparison;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import android.hardware.SensorManager;
+
+/**
+ * Orientation from Android's rotation matrix of the latest gravity and magnetic field samples.
+ * The matrix rotates device coordinates into earth coordinates (x east, y north, z sky), so the
+ * vertical acceleration is its third row times the sample, which is what inverting the transposed
+ * matrix and multiplying did before. All arrays are allocated once.
+ */
+public class RotationMatrixFusion implements OrientationFusion {
+
+    private final float[] gravity = new float[3];
+    private final float[] magneticField = new float[3];
+    private final float[] rotation = new float[16];
+    private boolean hasGravity;
+    private boolean hasMagneticField;
+
+    private double vertical;
+
+    /** Not needed, the gravity sensor gives the orientation */
+    @Override
+    public void onGyroscope(double x, double y, double z) {
+    }
+
+    @Override
+    public void onGravity(double x, double y, double z) {
+        gravity[0] = (float) x;
+        gravity[1] = (float) y;
+        gravity[2] = (float) z;
+        hasGravity = true;
+    }
+
+    @Override
+    public void onMagneticField(double x, double y, double z) {
+        magneticField[0] = (float) x;
+        magneticField[1] = (float) y;
+        magneticField[2] = (float) z;
+        hasMagneticField = true;
+    }
+
+    @Override
+    public boolean onAcceleration(long timestamp, double x, double y, double z) {
+        if (!hasGravity || !hasMagneticField) {
+            return false;
+        }
+
+        // Fails in free fall or close to the magnetic poles, where the orientation is undefined
+        if (!SensorManager.getRotationMatrix(rotation, null, gravity, magneticField)) {
+            return false;
+        }
+
+        vertical = rotation[8] * (float) x + rotation[9] * (float) y + rotation[10] * (float) z;
+
+        return true;
+    }
+
+    @Override
+    public double getVertical() {
+        return vertical;
+    }
+
+    @Override
+    public void reset() {
+        hasGravity = false;
+        hasMagneticField = false;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * In-memory recording of the vertical acceleration. Every sample is pushed through the streaming
+ * filter as it arrives, so when the capture ends the filtered samples are ready and processing can
+ * start without reading the data back and filtering it. The arrays are kept between captures.
+ */
+public class SensorCapture {
+
+    long[] timestamps; // Milliseconds
+    double[] samples; // Unfiltered vertical acceleration
+    double[] filtered;
+    int count;
+
+    final BiquadCascade filter;
+
+    public SensorCapture(int expectedSamples, BiquadCascade filter){
+        this.filter = filter;
+
+        timestamps = new long[Math.max(expectedSamples, 1)];
+        samples = new double[timestamps.length];
+        filtered = new double[timestamps.length];
+    }
+
+    /** Drops all samples and restarts the filter from a zero state */
+    public void reset(){
+        count = 0;
+        filter.reset();
+    }
+
+    /** Appends a sample and its filtered value */
+    public void push(long timestamp, double sample){
+        if(count == timestamps.length){
+            timestamps = Arrays.copyOf(timestamps, count * 2);
+            samples = Arrays.copyOf(samples, count * 2);
+            filtered = Arrays.copyOf(filtered, count * 2);
+        }
+
+        timestamps[count] = timestamp;
+        samples[count] = sample;
+        filtered[count] = filter.filter(sample);
+        count++;
+    }
+
+    /** Appends the samples of a rotatedData file, one "timestamp,value" line per sample */
+    public void read(BufferedReader reader) throws IOException {
+        String line;
+
+        while((line = reader.readLine()) != null){
+            StringTokenizer st = new StringTokenizer(line, ",");
+            long timestamp = Long.parseLong(st.nextToken());
+            push(timestamp, Double.parseDouble(st.nextToken()));
+        }
+    }
+
+    /**
+     * Replays a sensorData file through the fusion and appends the vertical acceleration it yields,
+     * one "timestamp,ax,ay,az,gx,gy,gz" line per accelerometer sample with the gyroscope in radians
+     * per second, as SensorListener records it
+     */
+    public void readRaw(BufferedReader reader, OrientationFusion fusion) throws IOException {
+        String line;
+
+        while((line = reader.readLine()) != null){
+            StringTokenizer st = new StringTokenizer(line, ",");
+            long timestamp = Long.parseLong(st.nextToken());
+            double ax = Double.parseDouble(st.nextToken());
+            double ay = Double.parseDouble(st.nextToken());
+            double az = Double.parseDouble(st.nextToken());
+
+            fusion.onGyroscope(Double.parseDouble(st.nextToken()), Double.parseDouble(st.nextToken()), Double.parseDouble(st.nextToken()));
+
+            if(fusion.onAcceleration(timestamp, ax, ay, az)){
+                push(timestamp, fusion.getVertical());
+            }
+        }
+    }
+
+    /** Returns the number of samples */
+    public int size(){
+        return count;
+    }
+
+    /** Returns the index of the first sample taken at or after the given time, size() if there is none */
+    public int indexAt(long timestamp){
+        int low = 0;
+        int high = count;
+
+        while(low < high){
+            int middle = (low + high) >>> 1;
+
+            if(timestamps[middle] < timestamp){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the index range {from, to} of the samples within duration seconds from the first
+     * sample at least offset seconds into the capture. Like the slice MainService reads from the
+     * rotatedData file, it ends with the first sample at or after the end of the duration.
+     */
+    public int[] getWindow(int offset, int duration){
+        if(count == 0){
+            return new int[]{0, 0};
+        }
+
+        int from = indexAt(timestamps[0] + offset * 1000L);
+
+        if(from == count){
+            return new int[]{from, from};
+        }
+
+        return new int[]{from, Math.min(indexAt(timestamps[from] + duration * 1000L) + 1, count)};
+    }
+
+    /** Returns a view of the unfiltered samples from (inclusive) to (exclusive) */
+    public Signal getSamples(int from, int to){
+        return new Signal(samples, from, to - from);
+    }
+
+    /** Returns a view of the filtered samples from (inclusive) to (exclusive) */
+    public Signal getFiltered(int from, int to){
+        return new Signal(filtered, from, to - from);
+    }
+}
@@ -36,8 +36,6 @@ public class SensorListener implements SensorEventListener {
     int curSampleCount = 0;
     long beginTime = -1;
 
-    private float[] gravityValues = null;
-    private float[] magneticValues = null;
     private float[] gyroValues = null;
 
     File rotatedFile;
@@ -49,9 +47,14 @@ public class SensorListener implements SensorEventListener {
     OutputStreamWriter rotatedWriter;
     OutputStreamWriter rawWriter;
 
-    public SensorListener(Context context, int duration) {
+    SensorCapture capture; // Filters and keeps the vertical acceleration in memory
+    OrientationFusion fusion; // Rotates every accelerometer sample into the earth frame
+
+    public SensorListener(Context context, int duration, SensorCapture capture, OrientationFusion fusion) {
         this.context = context;
         this.duration = duration;
+        this.capture = capture;
+        this.fusion = fusion;
     }
 
     public void listen() {
@@ -92,8 +95,7 @@ public class SensorListener implements SensorEventListener {
 
     public void onSensorChanged(SensorEvent event) {
 
-        if ((gravityValues != null) && (magneticValues != null) && (gyroValues != null)
-                && (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER)) {
+        if ((gyroValues != null) && (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER)) {
 
 
             long time = System.currentTimeMillis();
@@ -108,38 +110,29 @@ public class SensorListener implements SensorEventListener {
                     EventBus.getDefault().post(new MessageEvent(MessageEvent.ProtocolState.WALKING, null));
                 }
 
-                float[] deviceRelativeAcceleration = new float[4];
-                deviceRelativeAcceleration[0] = event.values[0];
-                deviceRelativeAcceleration[1] = event.values[1];
-                deviceRelativeAcceleration[2] = event.values[2];
-                deviceRelativeAcceleration[3] = 0;
-
-                /* Change the device relative acceleration values to earth relative values
+                /* The fusion changed the device relative acceleration values to earth relative values
                     X axis -> East
                     Y axis -> North Pole
                     Z axis -> Sky
                 */
+                // Samples before the orientation is known only go to the raw file, so a replay of it starts the fusion at the same sample
+                boolean fused = fusion.onAcceleration(time, event.values[0], event.values[1], event.values[2]);
+                double verticalAcc = fusion.getVertical();
 
-                float[] R = new float[16];
-                float[] I = new float[16];
-                float[] earthAcc = new float[16];
-
-                SensorManager.getRotationMatrix(R, I, gravityValues, magneticValues);
-
-                float[] inv = new float[16];
-
-                android.opengl.Matrix.invertM(inv, 0, R, 0);
-                android.opengl.Matrix.multiplyMV(earthAcc, 0, inv, 0, deviceRelativeAcceleration, 0);
-
-//                Log.d(Constants.TAG, "earthAcc[2] " + earthAcc[2]);
+//                Log.d(Constants.TAG, "verticalAcc " + verticalAcc);
 
+                if (fused) {
+                    capture.push(time, verticalAcc);
+                }
 
                 try {
-                    rotatedWriter.append(time + ",");
-                    rotatedWriter.append(earthAcc[2] + "\n");
+                    if (fused) {
+                        rotatedWriter.append(time + ",");
+                        rotatedWriter.append(verticalAcc + "\n");
+                    }
 
                     rawWriter.append(time + ",");
-                    rawWriter.append(deviceRelativeAcceleration[0] + "," + deviceRelativeAcceleration[1] + "," + deviceRelativeAcceleration[2] + ",");
+                    rawWriter.append(event.values[0] + "," + event.values[1] + "," + event.values[2] + ",");
                     rawWriter.append(gyroValues[0] + "," + gyroValues[1] + "," + gyroValues[2] + "\n");
 
                 } catch (IOException e) {
@@ -149,11 +142,12 @@ public class SensorListener implements SensorEventListener {
                 curSampleCount++;
             }
         } else if (event.sensor.getType() == Sensor.TYPE_GRAVITY) {
-            gravityValues = event.values;
+            fusion.onGravity(event.values[0], event.values[1], event.values[2]);
         } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            magneticValues = event.values;
+            fusion.onMagneticField(event.values[0], event.values[1], event.values[2]);
         } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
             gyroValues = event.values;
+            fusion.onGyroscope(gyroValues[0], gyroValues[1], gyroValues[2]);
         }
     }
 
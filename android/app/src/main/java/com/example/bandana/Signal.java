@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * A window of samples backed by a primitive array. Slices are views on the same array, so splitting
+ * a signal into cycles or windows does not copy or box any sample.
+ */
+public class Signal {
+
+    final double[] data;
+    final int offset;
+    final int length;
+
+    public Signal(int length){
+        this(new double[length], 0, length);
+    }
+
+    public Signal(double[] data){
+        this(data, 0, data.length);
+    }
+
+    public Signal(double[] data, int offset, int length){
+        if(offset < 0 || length < 0 || offset + length > data.length){
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", capacity " + data.length);
+        }
+
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Returns the number of samples in this signal */
+    public int size(){
+        return length;
+    }
+
+    /** Returns the sample at the given index */
+    public double get(int index){
+        return data[offset + index];
+    }
+
+    /** Overwrites the sample at the given index, visible to all views sharing the same array */
+    public void set(int index, double value){
+        data[offset + index] = value;
+    }
+
+    /** Returns a view of the samples from (inclusive) and to (exclusive) without copying them */
+    public Signal slice(int from, int to){
+        if(from < 0 || to > length || from > to){
+            throw new IndexOutOfBoundsException("slice " + from + ".." + to + " of " + length);
+        }
+
+        return new Signal(data, offset + from, to - from);
+    }
+
+    /** Returns a copy of the samples as a new array */
+    public double[] toArray(){
+        double[] result = new double[length];
+        System.arraycopy(data, offset, result, 0, length);
+        return result;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder("[");
+
+        for(int i = 0; i < length; i++){
+            if(i > 0){
+                builder.append(", ");
+            }
+            builder.append(data[offset + i]);
+        }
+
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * Precomputed Lanczos-windowed sinc weights that map a periodic cycle of inputLength samples to
+ * outputLength points. Output point i lies at input position i * inputLength / outputLength, like
+ * the samples of the FFT resampler. When shrinking, the sinc is stretched so it also acts as the
+ * anti-aliasing low-pass.
+ */
+class SincKernel {
+
+    static final int ZERO_CROSSINGS = 4; // Lobes of the sinc on either side of the centre
+
+    // Direct-mapped by input length; kernels are immutable, so a racy read is harmless
+    private static final SincKernel[] cache = new SincKernel[256];
+
+    final int inputLength;
+    final int outputLength;
+    final int taps;
+
+    private final int[] indices; // Input sample of every tap, already wrapped around the cycle
+    private final double[] weights;
+
+    private SincKernel(int inputLength, int outputLength){
+        this.inputLength = inputLength;
+        this.outputLength = outputLength;
+
+        double cutoff = Math.min(1.0, (double) outputLength / inputLength);
+        double halfWidth = ZERO_CROSSINGS / cutoff;
+        int reach = (int) Math.ceil(halfWidth);
+
+        taps = 2 * reach;
+        indices = new int[outputLength * taps];
+        weights = new double[outputLength * taps];
+
+        for(int i = 0; i < outputLength; i++){
+            double position = (double) i * inputLength / outputLength;
+            int first = (int) Math.floor(position) - reach + 1;
+            double sum = 0;
+
+            for(int k = 0; k < taps; k++){
+                double distance = position - (first + k);
+                double weight = 0;
+
+                if(Math.abs(distance) < halfWidth){
+                    weight = cutoff * sinc(cutoff * distance) * sinc(cutoff * distance / ZERO_CROSSINGS);
+                }
+
+                indices[i * taps + k] = ((first + k) % inputLength + inputLength) % inputLength;
+                weights[i * taps + k] = weight;
+                sum += weight;
+            }
+
+            // Normalise so a constant cycle stays constant, as with the FFT
+            for(int k = 0; k < taps; k++){
+                weights[i * taps + k] /= sum;
+            }
+        }
+    }
+
+    /** Returns the kernel for the given lengths, reusing the cached one if it matches */
+    static SincKernel get(int inputLength, int outputLength){
+        int slot = inputLength & (cache.length - 1);
+        SincKernel kernel = cache[slot];
+
+        if(kernel == null || kernel.inputLength != inputLength || kernel.outputLength != outputLength){
+            kernel = new SincKernel(inputLength, outputLength);
+            cache[slot] = kernel;
+        }
+
+        return kernel;
+    }
+
+    /** Writes the outputLength interpolated points of the cycle starting at inputOffset */
+    void apply(double[] input, int inputOffset, double[] output, int outputOffset){
+        for(int i = 0, p = 0; i < outputLength; i++){
+            double sum = 0;
+
+            for(int k = 0; k < taps; k++, p++){
+                sum += weights[p] * input[inputOffset + indices[p]];
+            }
+
+            output[outputOffset + i] = sum;
+        }
+    }
+
+    private static double sinc(double x){
+        if(x == 0){
+            return 1.0;
+        }
+
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+}
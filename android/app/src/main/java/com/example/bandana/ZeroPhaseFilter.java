@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+/**
+ * Runs a biquad cascade forward and then backward over a block, like scipy's sosfiltfilt. The
+ * phase shifts of both passes cancel, so minima stay where they are in the unfiltered signal no
+ * matter where the window starts. The block is extended at both ends by an odd reflection and both
+ * passes start from the steady state of their first sample, which keeps the edge transients out of
+ * the result. The extended block lives in a buffer that is reused by every following call.
+ */
+public class ZeroPhaseFilter {
+
+    final BiquadCascade cascade;
+    final int padding; // Samples added at either end, scipy's default of three times the number of taps
+
+    private double[] extended = new double[0];
+
+    public ZeroPhaseFilter(BiquadCascade cascade){
+        this.cascade = cascade;
+
+        int taps = 2 * cascade.sections + 1;
+        int firstOrderSections = 0;
+
+        // A section with b2 = a2 = 0 is only a first-order one and needs no padding of its own
+        for(int c = 0; c < cascade.coefficients.length; c += 5){
+            if(cascade.coefficients[c + 2] == 0 && cascade.coefficients[c + 4] == 0){
+                firstOrderSections++;
+            }
+        }
+
+        this.padding = 3 * (taps - firstOrderSections);
+    }
+
+    /**
+     * Filters length samples of input into output. Blocks not longer than the padding are padded
+     * with as many samples as they have minus one instead.
+     */
+    public void filter(double[] input, int inputOffset, double[] output, int outputOffset, int length){
+        if(length == 0){
+            return;
+        }
+
+        int pad = Math.min(padding, length - 1);
+        int size = length + 2 * pad;
+
+        if(extended.length < size){
+            extended = new double[Math.max(size, extended.length * 2)];
+        }
+
+        double first = input[inputOffset];
+        double last = input[inputOffset + length - 1];
+
+        for(int i = 0; i < pad; i++){
+            extended[i] = 2 * first - input[inputOffset + pad - i];
+            extended[pad + length + i] = 2 * last - input[inputOffset + length - 2 - i];
+        }
+
+        System.arraycopy(input, inputOffset, extended, pad, length);
+
+        cascade.setSteadyState(extended[0]);
+        cascade.filter(extended, 0, extended, 0, size);
+        reverse(extended, size);
+
+        cascade.setSteadyState(extended[0]);
+        cascade.filter(extended, 0, extended, 0, size);
+        reverse(extended, size);
+
+        System.arraycopy(extended, pad, output, outputOffset, length);
+    }
+
+    /** Filters the whole signal into a new one */
+    public Signal filter(Signal input){
+        Signal output = new Signal(input.size());
+        filter(input.data, input.offset, output.data, 0, input.size());
+        return output;
+    }
+
+    private static void reverse(double[] data, int length){
+        for(int i = 0, j = length - 1; i < j; i++, j--){
+            double swap = data[i];
+            data[i] = data[j];
+            data[j] = swap;
+        }
+    }
+}
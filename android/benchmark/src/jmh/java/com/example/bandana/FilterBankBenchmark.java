@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Filtering several axes with one FilterBank against one BiquadCascade per axis. created runs
+ * whatever FilterBank.create picks: the Vector API version when the benchmarks run with
+ * -PvectorJdk (see build.gradle), the scalar bank otherwise.
+ */
+@State(Scope.Thread)
+public class FilterBankBenchmark {
+
+    @Param({"1", "3", "4", "8"})
+    int channels;
+
+    @Param({"18"})
+    int windowSeconds;
+
+    @Param({"50"})
+    int sampleRate;
+
+    double[][] input;
+    double[][] output;
+
+    FilterBank bank;
+    FilterBank created;
+    BiquadCascade[] cascades;
+
+    @Setup
+    public void setup(){
+        SyntheticGait gait = new SyntheticGait(windowSeconds, sampleRate, 42);
+        input = new double[channels][gait.size];
+        output = new double[channels][gait.size];
+
+        for(int c = 0; c < channels; c++){
+            for(int n = 0; n < gait.size; n++){
+                input[c][n] = gait.acceleration[n][c % 3] * (1 + c / 3);
+            }
+        }
+
+        bank = new FilterBank(Filter.createChebyBandpass(), channels);
+        created = FilterBank.create(Filter.createChebyBandpass(), channels);
+        cascades = new BiquadCascade[channels];
+
+        for(int c = 0; c < channels; c++){
+            cascades[c] = Filter.createChebyBandpass();
+        }
+    }
+
+    @Benchmark
+    public double[][] filterBank(){
+        bank.reset();
+        bank.filter(input, output, 0, input[0].length);
+        return output;
+    }
+
+    @Benchmark
+    public double[][] created(){
+        created.reset();
+        created.filter(input, output, 0, input[0].length);
+        return output;
+    }
+
+    @Benchmark
+    public double[][] cascadePerChannel(){
+        for(int c = 0; c < channels; c++){
+            cascades[c].reset();
+            cascades[c].filter(input[c], 0, output[c], 0, input[c].length);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Fusing many traces with one LinearAccelerationBatch against one LinearAcceleration per trace.
+ * created runs whatever LinearAccelerationBatch.create picks: the Vector API version when the
+ * benchmarks run with -PvectorJdk (see build.gradle), the scalar batch otherwise.
+ */
+@State(Scope.Thread)
+public class LinearAccelerationBatchBenchmark {
+
+    @Param({"1", "4", "16", "64", "256"})
+    int traces;
+
+    @Param({"18"})
+    int windowSeconds;
+
+    @Param({"50"})
+    int sampleRate;
+
+    int length;
+
+    // Interleaved samples of every trace, as LinearAcceleration.calculate takes them
+    double[][] acceleration;
+    double[][] rotationRate;
+    long[][] timestamps;
+    double[] output;
+
+    // The same samples as structure of arrays, sample n of trace c at n * traces + c
+    double[] ax, ay, az, gx, gy, gz;
+    long[] t;
+    double[] vertical;
+
+    LinearAccelerationBatch batch;
+    LinearAccelerationBatch created;
+
+    @Setup
+    public void setup(){
+        acceleration = new double[traces][];
+        rotationRate = new double[traces][];
+        timestamps = new long[traces][];
+
+        for(int c = 0; c < traces; c++){
+            SyntheticGait gait = new SyntheticGait(windowSeconds, sampleRate, 42 + c);
+            acceleration[c] = gait.getAccelerationSamples();
+            rotationRate[c] = gait.getRotationRateSamples();
+            timestamps[c] = gait.timestamps;
+        }
+
+        length = timestamps[0].length;
+        output = new double[length];
+
+        ax = new double[length * traces];
+        ay = new double[length * traces];
+        az = new double[length * traces];
+        gx = new double[length * traces];
+        gy = new double[length * traces];
+        gz = new double[length * traces];
+        t = new long[length * traces];
+        vertical = new double[length * traces];
+
+        for(int c = 0; c < traces; c++){
+            for(int n = 0; n < length; n++){
+                int i = n * traces + c;
+                ax[i] = acceleration[c][3 * n];
+                ay[i] = acceleration[c][3 * n + 1];
+                az[i] = acceleration[c][3 * n + 2];
+                gx[i] = rotationRate[c][3 * n];
+                gy[i] = rotationRate[c][3 * n + 1];
+                gz[i] = rotationRate[c][3 * n + 2];
+                t[i] = timestamps[c][n];
+            }
+        }
+
+        batch = new LinearAccelerationBatch(traces);
+        created = LinearAccelerationBatch.create(traces);
+    }
+
+    @Benchmark
+    public double[] batch(){
+        batch.reset();
+        batch.calculate(ax, ay, az, gx, gy, gz, t, length, vertical);
+        return vertical;
+    }
+
+    @Benchmark
+    public double[] created(){
+        created.reset();
+        created.calculate(ax, ay, az, gx, gy, gz, t, length, vertical);
+        return vertical;
+    }
+
+    @Benchmark
+    public double[] perTrace(){
+        for(int c = 0; c < traces; c++){
+            new LinearAcceleration().calculate(acceleration[c], rotationRate[c], timestamps[c], length, output, 0);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of every stage of one fingerprint window and of the whole window as MainService processes it.
+ * Each stage gets the output of the previous stages precomputed, so only the stage itself is timed.
+ * Run with the gc profiler (the default of the jmh task) to see the allocation rate per operation.
+ */
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    static final int NUMBER_OF_GAIT_CYCLES = 12;
+    static final int BITS_PER_CYCLE = 4;
+    static final int GAIT_RESAMPLE_RATE = 40;
+    static final int FINGERPRINT_SIZE = 32;
+    static final int DECIMATION_FACTOR = 2;
+
+    @Param({"9", "18", "60"})
+    int windowSeconds;
+
+    @Param({"25", "50", "100"})
+    int sampleRate;
+
+    Signal rotatedData;
+    ArrayList<ArrayList<Double>> acceleration;
+    ArrayList<ArrayList<Double>> rotationRate;
+    ArrayList<Long> timestamps;
+    double[] accelerationSamples;
+    double[] rotationRateSamples;
+    long[] timestampSamples;
+    double[] verticalAcceleration;
+
+    Signal filteredData;
+    Signal decimatedData;
+    GaitCycleMatrix cycles;
+    Quantization quantization;
+    ArrayList<Integer> fingerprint;
+    ArrayList<Double> reliability;
+    PackedFingerprint packedFingerprint;
+    PackedFingerprint otherPackedFingerprint;
+
+    int stepPeriod;
+    OnlineQuantization onlineQuantization;
+    GaitCycleSegmenter segmenter;
+
+    BiquadCascade highPass;
+    ZeroPhaseFilter zeroPhaseHighPass;
+    PipelineWorkspace workspace;
+    Decimator decimator;
+
+    // The pipeline as MainService sets it up, with the window already captured
+    FingerprintPipeline pipeline;
+    SensorCapture capture;
+    SensorCapture rawCapture;
+    MadgwickFusion fusion;
+
+    @Setup
+    public void setup(){
+        SyntheticGait gait = new SyntheticGait(windowSeconds, sampleRate, 42);
+        rotatedData = gait.getVertical();
+        acceleration = gait.getAccelerationLists();
+        rotationRate = gait.getRotationRateLists();
+        timestamps = gait.getTimestampList();
+        accelerationSamples = gait.getAccelerationSamples();
+        rotationRateSamples = gait.getRotationRateSamples();
+        timestampSamples = gait.timestamps;
+        verticalAcceleration = new double[gait.size];
+
+        highPass = FilterDesign.getShared().chebyshevII(FilterDesign.Band.HIGH_PASS, 5, sampleRate, 0.5, 10);
+        zeroPhaseHighPass = new ZeroPhaseFilter(FilterDesign.getShared().chebyshevII(FilterDesign.Band.HIGH_PASS, 5, sampleRate, 0.5, 10));
+        workspace = new PipelineWorkspace(rotatedData.size(), GAIT_RESAMPLE_RATE);
+
+        filteredData = new Signal(rotatedData.size());
+        highPass(rotatedData, filteredData);
+
+        decimator = new Decimator(DECIMATION_FACTOR);
+        decimatedData = new Signal(decimator.getOutputLength(filteredData.size()));
+        decimator.decimate(filteredData, decimatedData.data, 0);
+
+        // Own copies, the workspace of the pipeline benchmarks overwrites its buffers
+        cycles = createDetection(filteredData, new PipelineWorkspace(filteredData.size(), GAIT_RESAMPLE_RATE)).detectCycles();
+        quantization = new Quantization(cycles, BITS_PER_CYCLE);
+        quantization.generateFingerprint();
+        fingerprint = quantization.getFingerprint();
+        reliability = quantization.getReliability();
+
+        stepPeriod = createDetection(filteredData, new PipelineWorkspace(filteredData.size(), GAIT_RESAMPLE_RATE)).estimateStepPeriod();
+        onlineQuantization = new OnlineQuantization(GAIT_RESAMPLE_RATE, BITS_PER_CYCLE, NUMBER_OF_GAIT_CYCLES);
+        segmenter = new GaitCycleSegmenter(stepPeriod, NUMBER_OF_GAIT_CYCLES, GAIT_RESAMPLE_RATE, 0, onlineQuantization);
+        segmenter.setSampleRate(sampleRate);
+
+        pipeline = new FingerprintPipeline(sampleRate, windowSeconds, NUMBER_OF_GAIT_CYCLES, BITS_PER_CYCLE, GAIT_RESAMPLE_RATE);
+        capture = pipeline.createCapture(windowSeconds);
+        rawCapture = pipeline.createCapture(windowSeconds);
+        fusion = new MadgwickFusion();
+
+        for(int i = 0; i < rotatedData.size(); i++){
+            capture.push(timestampSamples[i], rotatedData.get(i));
+        }
+
+        // A second fingerprint with every seventh bit flipped, as from the other device
+        packedFingerprint = quantization.getPackedFingerprint();
+        otherPackedFingerprint = new PackedFingerprint(packedFingerprint.size());
+
+        for(int i = 0; i < packedFingerprint.size(); i++){
+            otherPackedFingerprint.add(packedFingerprint.get(i) ^ (i % 7 == 0 ? 1 : 0));
+        }
+    }
+
+    /** Filters the input with the high-pass of MainService, starting from a zero state */
+    private Signal highPass(Signal input, Signal output){
+        highPass.reset();
+        highPass.filter(input.data, input.offset, output.data, output.offset, input.size());
+
+        return output;
+    }
+
+    /** Cycle detection at the full sensor rate, with the constants scaled from 50 Hz as the pipeline does */
+    private GaitCycleDetection createDetection(Signal data, PipelineWorkspace workspace){
+        GaitCycleDetection detection = new GaitCycleDetection(data, NUMBER_OF_GAIT_CYCLES, GAIT_RESAMPLE_RATE, 0, workspace);
+        detection.setSampleRate(sampleRate);
+        return detection;
+    }
+
+    @Benchmark
+    public ArrayList<Double> linearAcceleration(){
+        return new LinearAcceleration().calculateClean(acceleration, rotationRate, timestamps);
+    }
+
+    @Benchmark
+    public double[] linearAccelerationPrimitive(){
+        new LinearAcceleration().calculate(accelerationSamples, rotationRateSamples, timestampSamples, timestampSamples.length, verticalAcceleration, 0);
+        return verticalAcceleration;
+    }
+
+    @Benchmark
+    public Signal chebyBandpass(){
+        return new Filter().chebyBandpass(rotatedData);
+    }
+
+    @Benchmark
+    public Signal chebyBandpassCascade(){
+        return new Filter().chebyBandpassCascade(rotatedData);
+    }
+
+    @Benchmark
+    public Signal highPass(){
+        workspace.ensureWindow(rotatedData.size());
+        return highPass(rotatedData, new Signal(workspace.filtered, 0, rotatedData.size()));
+    }
+
+    @Benchmark
+    public double[] zeroPhaseHighPass(){
+        workspace.ensureWindow(rotatedData.size());
+        zeroPhaseHighPass.filter(rotatedData.data, rotatedData.offset, workspace.filtered, 0, rotatedData.size());
+        return workspace.filtered;
+    }
+
+    @Benchmark
+    public GaitCycleMatrix detectCycles(){
+        workspace.reset();
+        return createDetection(filteredData, workspace).detectCycles();
+    }
+
+    @Benchmark
+    public double[] decimate(){
+        workspace.ensureWindow(filteredData.size());
+        decimator.decimate(filteredData, workspace.decimated, 0);
+        return workspace.decimated;
+    }
+
+    /** Cycle detection on the decimated data, compare with detectCycles at the full rate */
+    @Benchmark
+    public GaitCycleMatrix detectCyclesDecimated(){
+        workspace.reset();
+        GaitCycleDetection detection = new GaitCycleDetection(decimatedData, NUMBER_OF_GAIT_CYCLES, GAIT_RESAMPLE_RATE, 0, workspace);
+        detection.setSampleRate((double) sampleRate / DECIMATION_FACTOR);
+        return detection.detectCycles();
+    }
+
+    @Benchmark
+    public PackedFingerprint generateFingerprint(){
+        Quantization quantization = new Quantization(cycles, BITS_PER_CYCLE, workspace);
+        quantization.generateFingerprint();
+        return quantization.getPackedFingerprint();
+    }
+
+    /** Quantises every window into 4 Gray-coded levels instead of its sign */
+    @Benchmark
+    public PackedFingerprint generateFingerprintTwoBitsPerWindow(){
+        Quantization quantization = new Quantization(cycles, BITS_PER_CYCLE, workspace);
+        quantization.setBitsPerWindow(2);
+        quantization.generateFingerprint();
+        return quantization.getPackedFingerprint();
+    }
+
+    /** Segments and quantises the filtered data sample by sample, the bits of every cycle are available as it ends */
+    @Benchmark
+    public PackedFingerprint streamFingerprint(){
+        segmenter.reset();
+        onlineQuantization.reset();
+
+        for(int i = 0; i < filteredData.size() && !segmenter.isFinished(); i++){
+            segmenter.push(filteredData.get(i));
+        }
+
+        segmenter.finish();
+        onlineQuantization.finish();
+
+        return onlineQuantization.getFingerprint();
+    }
+
+    @Benchmark
+    public List<Integer> sortFingerprint(){
+        return quantization.sortFingerprint(fingerprint, reliability, Math.min(FINGERPRINT_SIZE, fingerprint.size()));
+    }
+
+    @Benchmark
+    public PackedFingerprint selectFingerprint(){
+        return quantization.selectFingerprint(packedFingerprint, reliability, Math.min(FINGERPRINT_SIZE, fingerprint.size()));
+    }
+
+    @Benchmark
+    public double similarity(){
+        return packedFingerprint.similarity(otherPackedFingerprint);
+    }
+
+    /**
+     * One processData round on the captured rotated data: FingerprintPipeline.process and picking
+     * the most reliable bits. The high-pass is not part of it, the capture runs it as the samples
+     * are pushed, see highPass for its cost.
+     */
+    @Benchmark
+    public PackedFingerprint window(){
+        return select(pipeline.process(capture, 0, windowSeconds));
+    }
+
+    /**
+     * The window round with every stage allocating its own buffers and the bits sorted from boxed
+     * lists, as before the workspace existed. Its gc.alloc.rate.norm against the one of window()
+     * is what the workspace saves per window.
+     */
+    @Benchmark
+    public List<Integer> windowWithoutWorkspace(){
+        Signal filteredValues = new Filter().chebyBandpass(rotatedData);
+        GaitCycleDetection detection = new GaitCycleDetection(filteredValues, NUMBER_OF_GAIT_CYCLES, GAIT_RESAMPLE_RATE, 0);
+        detection.setSampleRate(sampleRate);
+        GaitCycleMatrix gaitSequence = detection.detectCycles();
+
+        Quantization quantization = new Quantization(gaitSequence, BITS_PER_CYCLE);
+        quantization.generateFingerprint();
+
+        ArrayList<Integer> fingerprint = quantization.getFingerprint();
+        return quantization.sortFingerprint(fingerprint, quantization.getReliability(), Math.min(FINGERPRINT_SIZE, fingerprint.size()));
+    }
+
+    /**
+     * The window round starting from raw sensor samples: every sample goes through the Madgwick
+     * fusion into the capture, as in the sensor thread, before the window is processed
+     */
+    @Benchmark
+    public PackedFingerprint windowFromRawSensors(){
+        rawCapture.reset();
+        fusion.reset();
+
+        for(int i = 0; i < timestampSamples.length; i++){
+            int axis = 3 * i;
+            fusion.onGyroscope(rotationRateSamples[axis], rotationRateSamples[axis + 1], rotationRateSamples[axis + 2]);
+
+            if(fusion.onAcceleration(timestampSamples[i], accelerationSamples[axis], accelerationSamples[axis + 1], accelerationSamples[axis + 2])){
+                rawCapture.push(timestampSamples[i], fusion.getVertical());
+            }
+        }
+
+        return select(pipeline.process(rawCapture, 0, windowSeconds));
+    }
+
+    /** Picks the most reliable bits of the window as MainService does */
+    private static PackedFingerprint select(Quantization quantization){
+        PackedFingerprint fingerprint = quantization.getPackedFingerprint();
+        return quantization.selectFingerprint(fingerprint, quantization.getReliabilities(), fingerprint.size(), FINGERPRINT_SIZE);
+    }
+}
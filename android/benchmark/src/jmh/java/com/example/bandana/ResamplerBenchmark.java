@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Resampling many cycles on one thread against resampling them in parallel with resampleAll */
+@State(Scope.Thread)
+public class ResamplerBenchmark {
+
+    static final int GAIT_RESAMPLE_RATE = 40;
+
+    @Param({"1", "2", "4"})
+    int parallelism;
+
+    @Param({"12", "480"})
+    int cycles;
+
+    List<Signal> cycleViews;
+    GaitCycleMatrix matrix;
+    Resampler resampler;
+
+    @Setup
+    public void setup(){
+        // Cycles of 50 to 61 samples, the lengths a 50 Hz walk produces
+        SyntheticGait gait = new SyntheticGait(cycles * 61 / 50 + 1, 50, 42);
+        Signal vertical = gait.getVertical();
+        cycleViews = new ArrayList<>(cycles);
+
+        for(int i = 0, offset = 0; i < cycles; i++){
+            int length = 50 + i % 12;
+            cycleViews.add(new Signal(vertical.data, offset, length));
+            offset += length;
+        }
+
+        matrix = new GaitCycleMatrix(GAIT_RESAMPLE_RATE, cycles);
+        resampler = new Resampler(GAIT_RESAMPLE_RATE);
+    }
+
+    @Benchmark
+    public GaitCycleMatrix resampleAll(){
+        matrix.clear();
+        resampler.resampleAll(cycleViews, matrix, parallelism, 2);
+        return matrix;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Seeded walking traces for the benchmarks. The vertical acceleration is a step frequency sinusoid
+ * with its first harmonic, a weaker stride component (every other step differs a little, so a gait
+ * cycle spans two steps), slow cadence drift and gaussian sensor noise.
+ */
+class SyntheticGait {
+
+    static final double GRAVITY = 9.81;
+    static final double STEP_FREQUENCY = 1.8; // Steps per second of a normal walk
+
+    final int sampleRate;
+    final int size;
+
+    final double[] vertical; // Rotated vertical acceleration without gravity, as in the rotatedData file
+    final long[] timestamps; // Milliseconds
+
+    final double[][] acceleration; // Raw device axes including gravity, [sample][x, y, z]
+    final double[][] rotationRate; // Raw gyroscope axes in rad/s, [sample][x, y, z]
+
+    SyntheticGait(int seconds, int sampleRate, long seed){
+        this.sampleRate = sampleRate;
+        this.size = seconds * sampleRate;
+
+        Random random = new Random(seed);
+
+        vertical = new double[size];
+        timestamps = new long[size];
+        acceleration = new double[size][3];
+        rotationRate = new double[size][3];
+
+        double phase = 0;
+
+        for(int i = 0; i < size; i++){
+            double t = (double) i / sampleRate;
+            double frequency = STEP_FREQUENCY * (1 + 0.03 * Math.sin(2 * Math.PI * t / 20));
+            phase += 2 * Math.PI * frequency / sampleRate;
+
+            double a = 2.0 * Math.sin(phase)
+                    + 0.8 * Math.sin(2 * phase + 0.3)
+                    + 0.4 * Math.sin(phase / 2)
+                    + 0.3 * random.nextGaussian();
+
+            vertical[i] = a;
+            timestamps[i] = Math.round(t * 1000);
+
+            // The phone sits slightly tilted in the pocket and sways with every step
+            acceleration[i][0] = 0.6 * Math.sin(phase / 2 + 1) + 0.1 * random.nextGaussian();
+            acceleration[i][1] = 0.4 * Math.cos(phase) + 0.1 * random.nextGaussian();
+            acceleration[i][2] = GRAVITY + a;
+
+            rotationRate[i][0] = 0.5 * Math.cos(phase / 2) + 0.02 * random.nextGaussian();
+            rotationRate[i][1] = 0.3 * Math.sin(phase) + 0.02 * random.nextGaussian();
+            rotationRate[i][2] = 0.1 * Math.sin(phase / 2 + 0.5) + 0.02 * random.nextGaussian();
+        }
+    }
+
+    /** Returns the vertical acceleration as a signal */
+    Signal getVertical(){
+        return new Signal(Arrays.copyOf(vertical, size));
+    }
+
+    /** Returns the accelerometer samples in the list layout LinearAcceleration expects */
+    ArrayList<ArrayList<Double>> getAccelerationLists(){
+        return toLists(acceleration);
+    }
+
+    /** Returns the gyroscope samples in the list layout LinearAcceleration expects */
+    ArrayList<ArrayList<Double>> getRotationRateLists(){
+        return toLists(rotationRate);
+    }
+
+    /** Returns the accelerometer samples interleaved x, y, z, as LinearAcceleration.calculate expects */
+    double[] getAccelerationSamples(){
+        return interleave(acceleration);
+    }
+
+    /** Returns the gyroscope samples interleaved x, y, z, as LinearAcceleration.calculate expects */
+    double[] getRotationRateSamples(){
+        return interleave(rotationRate);
+    }
+
+    /** Returns the timestamps in the list layout LinearAcceleration expects */
+    ArrayList<Long> getTimestampList(){
+        ArrayList<Long> list = new ArrayList<>(size);
+
+        for(long timestamp : timestamps){
+            list.add(timestamp);
+        }
+
+        return list;
+    }
+
+    private static double[] interleave(double[][] samples){
+        double[] interleaved = new double[samples.length * 3];
+
+        for(int i = 0; i < samples.length; i++){
+            System.arraycopy(samples[i], 0, interleaved, 3 * i, 3);
+        }
+
+        return interleaved;
+    }
+
+    private static ArrayList<ArrayList<Double>> toLists(double[][] samples){
+        ArrayList<ArrayList<Double>> lists = new ArrayList<>(samples.length);
+
+        for(double[] sample : samples){
+            ArrayList<Double> axes = new ArrayList<>(3);
+            axes.add(sample[0]);
+            axes.add(sample[1]);
+            axes.add(sample[2]);
+            lists.add(axes);
+        }
+
+        return lists;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures how many gait cycles a pairing needs. The traces come in pairs recorded at the same
+ * time by the two devices, as files of the same name in two directories. Every window of a pair is
+ * processed with each number of cycles and bits per window; like MainService, both devices select
+ * the most reliable bits by the same reliabilities and the agreement of the selected bits is
+ * averaged over all windows that yield enough of them.
+ */
+public class AgreementEvaluation {
+
+    static final double ACCEPTED_SIMILARITY = 0.70; // MainService pairs at this similarity
+
+    final EvaluationResults.Parameters parameters;
+    final int threads;
+    final int[] cycleCounts;
+    final int[] bitsPerWindow;
+    final int fingerprintSize;
+
+    /** Agreement sums of one number of cycles and bits per window */
+    static class Cell {
+        int windows; // Windows processed
+        int complete; // Windows that yielded fingerprintSize bits on both devices
+        double agreement; // Sum over the complete windows
+
+        void add(Cell other){
+            windows += other.windows;
+            complete += other.complete;
+            agreement += other.agreement;
+        }
+
+        double getMean(){
+            return complete > 0 ? agreement / complete : Double.NaN;
+        }
+    }
+
+    // Every worker keeps a pipeline per configuration and device and a capture per device
+    private final ThreadLocal<FingerprintPipeline[]> pipelines = new ThreadLocal<FingerprintPipeline[]>(){
+        @Override
+        protected FingerprintPipeline[] initialValue(){
+            FingerprintPipeline[] pipelines = new FingerprintPipeline[cycleCounts.length * bitsPerWindow.length * 2];
+
+            for(int c = 0; c < cycleCounts.length; c++){
+                for(int b = 0; b < bitsPerWindow.length; b++){
+                    for(int device = 0; device < 2; device++){
+                        FingerprintPipeline pipeline = new FingerprintPipeline(parameters.sampleRate, parameters.windowSeconds,
+                                cycleCounts[c], parameters.bitsPerCycle, parameters.gaitResampleRate);
+                        pipeline.setZeroPhase(parameters.zeroPhase);
+                        pipeline.setDecimation(parameters.decimation);
+                        pipeline.setBitsPerWindow(bitsPerWindow[b]);
+                        pipelines[(c * bitsPerWindow.length + b) * 2 + device] = pipeline;
+                    }
+                }
+            }
+
+            return pipelines;
+        }
+    };
+
+    private final ThreadLocal<SensorCapture[]> captures = new ThreadLocal<SensorCapture[]>(){
+        @Override
+        protected SensorCapture[] initialValue(){
+            FingerprintPipeline pipeline = pipelines.get()[0];
+            return new SensorCapture[]{pipeline.createCapture(60), pipeline.createCapture(60)};
+        }
+    };
+
+    public AgreementEvaluation(EvaluationResults.Parameters parameters, int threads, int[] cycleCounts, int[] bitsPerWindow, int fingerprintSize){
+        this.parameters = parameters;
+        this.threads = threads;
+        this.cycleCounts = cycleCounts;
+        this.bitsPerWindow = bitsPerWindow;
+        this.fingerprintSize = fingerprintSize;
+    }
+
+    /** Returns the pairs of files with the same name in both directories, sorted by name */
+    static List<File[]> collectPairs(File first, File second){
+        List<File> traces = new ArrayList<>();
+        List<File[]> pairs = new ArrayList<>();
+        BatchEvaluation.collect(first, traces);
+
+        for(File trace : traces){
+            File other = new File(second, first.toURI().relativize(trace.toURI()).getPath());
+
+            if(other.isFile()){
+                pairs.add(new File[]{trace, other});
+            } else {
+                System.err.println(trace + ": no " + other);
+            }
+        }
+
+        return pairs;
+    }
+
+    /** Evaluates all pairs and returns the sums per configuration, indexed [cycles][bits per window] */
+    public Cell[][] run(List<File[]> pairs) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Cell[][]>> results = new ArrayList<>(pairs.size());
+        Cell[][] total = createCells();
+
+        for(final File[] pair : pairs){
+            results.add(executor.submit(new Callable<Cell[][]>(){
+                @Override
+                public Cell[][] call() throws IOException {
+                    return evaluate(pair[0], pair[1]);
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        try {
+            for(int i = 0; i < results.size(); i++){
+                Cell[][] cells;
+
+                try {
+                    cells = results.get(i).get();
+                } catch (ExecutionException e) {
+                    // One broken pair must not stop the evaluation
+                    System.err.println(pairs.get(i)[0] + ": " + e.getCause());
+                    continue;
+                }
+
+                for(int c = 0; c < cycleCounts.length; c++){
+                    for(int b = 0; b < bitsPerWindow.length; b++){
+                        total[c][b].add(cells[c][b]);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return total;
+    }
+
+    private Cell[][] createCells(){
+        Cell[][] cells = new Cell[cycleCounts.length][bitsPerWindow.length];
+
+        for(int c = 0; c < cycleCounts.length; c++){
+            for(int b = 0; b < bitsPerWindow.length; b++){
+                cells[c][b] = new Cell();
+            }
+        }
+
+        return cells;
+    }
+
+    /** Processes every window of a pair in every configuration */
+    Cell[][] evaluate(File first, File second) throws IOException {
+        FingerprintPipeline[] pipelines = this.pipelines.get();
+        SensorCapture[] captures = this.captures.get();
+        Cell[][] cells = createCells();
+
+        read(first, captures[0]);
+        read(second, captures[1]);
+
+        int windows = Math.min(countWindows(captures[0]), countWindows(captures[1]));
+        int[] indices = new int[fingerprintSize];
+
+        for(int i = 0; i < windows; i++){
+            int offset = parameters.offsetSeconds * i;
+
+            for(int c = 0; c < cycleCounts.length; c++){
+                for(int b = 0; b < bitsPerWindow.length; b++){
+                    FingerprintPipeline pipeline = pipelines[(c * bitsPerWindow.length + b) * 2];
+                    Cell cell = cells[c][b];
+                    cell.windows++;
+
+                    Quantization own, other;
+
+                    try {
+                        own = pipeline.process(captures[0], offset, parameters.windowSeconds);
+                        other = pipelines[(c * bitsPerWindow.length + b) * 2 + 1].process(captures[1], offset, parameters.windowSeconds);
+                    } catch (IllegalArgumentException e) {
+                        continue; // Too few minima in the window for this many cycles
+                    }
+
+                    PackedFingerprint ownBits = own.getPackedFingerprint();
+                    PackedFingerprint otherBits = other.getPackedFingerprint();
+                    int length = Math.min(ownBits.size(), otherBits.size());
+
+                    if(length < fingerprintSize){
+                        continue;
+                    }
+
+                    // Both devices select by the same reliabilities, here the ones of the first
+                    Quantization.selectMostReliable(own.getReliabilities(), length, fingerprintSize, indices);
+                    int equal = 0;
+
+                    for(int k = 0; k < fingerprintSize; k++){
+                        if(ownBits.get(indices[k]) == otherBits.get(indices[k])){
+                            equal++;
+                        }
+                    }
+
+                    cell.complete++;
+                    cell.agreement += (double) equal / fingerprintSize;
+                }
+            }
+        }
+
+        return cells;
+    }
+
+    private static void read(File file, SensorCapture capture) throws IOException {
+        capture.reset();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            capture.read(reader);
+        }
+    }
+
+    private int countWindows(SensorCapture capture){
+        if(capture.size() == 0){
+            return 0;
+        }
+
+        long duration = capture.timestamps[capture.size() - 1] - capture.timestamps[0];
+        long window = parameters.windowSeconds * 1000L;
+
+        return duration < window ? 0 : (int) ((duration - window) / (parameters.offsetSeconds * 1000L)) + 1;
+    }
+
+    /** Prints the mean agreement per configuration and the fewest cycles that reach ACCEPTED_SIMILARITY */
+    void report(Cell[][] cells){
+        System.out.println(parameters + ", " + fingerprintSize + " selected bits");
+        System.out.printf("%6s", "cycles");
+
+        for(int bits : bitsPerWindow){
+            System.out.printf("  %22s", bits + (bits == 1 ? " bit" : " bits") + " per window");
+        }
+
+        System.out.println();
+
+        for(int c = 0; c < cycleCounts.length; c++){
+            System.out.printf("%6d", cycleCounts[c]);
+
+            for(int b = 0; b < bitsPerWindow.length; b++){
+                Cell cell = cells[c][b];
+                String mean = cell.complete > 0 ? String.format("%.3f", cell.getMean()) : "-";
+                System.out.printf("  %22s", mean + " (" + cell.complete + "/" + cell.windows + ")");
+            }
+
+            System.out.println();
+        }
+
+        for(int b = 0; b < bitsPerWindow.length; b++){
+            String needed = "not reached";
+
+            for(int c = 0; c < cycleCounts.length; c++){
+                if(cells[c][b].complete > 0 && cells[c][b].getMean() >= ACCEPTED_SIMILARITY){
+                    needed = cycleCounts[c] + " cycles";
+                    break;
+                }
+            }
+
+            System.out.println(bitsPerWindow[b] + (bitsPerWindow[b] == 1 ? " bit" : " bits") + " per window: agreement " + ACCEPTED_SIMILARITY + " after " + needed);
+        }
+    }
+}
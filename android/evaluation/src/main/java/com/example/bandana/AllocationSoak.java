@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the windows of one trace through a single FingerprintPipeline round after round, as
+ * MainService does capture after capture, and reports the bytes the calling thread allocated per
+ * window in every block of rounds. Once the workspace and plan caches have grown, the figure stays
+ * flat; what remains per window are the GaitCycleDetection, Resampler and Quantization objects of
+ * the round, the lists of cycle views and the window bounds of the capture, about 2 KB in all.
+ * MainService additionally boxes the reliabilities to send them.
+ */
+public class AllocationSoak {
+
+    final EvaluationResults.Parameters parameters;
+
+    public AllocationSoak(EvaluationResults.Parameters parameters){
+        this.parameters = parameters;
+    }
+
+    /** Processes all windows of the trace rounds times and prints the allocation per window of every tenth of the rounds */
+    public void run(File trace, int rounds) throws IOException {
+        FingerprintPipeline pipeline = new FingerprintPipeline(parameters.sampleRate, parameters.windowSeconds,
+                parameters.numberOfGaitCycles, parameters.bitsPerCycle, parameters.gaitResampleRate);
+        pipeline.setZeroPhase(parameters.zeroPhase);
+        pipeline.setDecimation(parameters.decimation);
+        pipeline.setBitsPerWindow(parameters.bitsPerWindow);
+
+        SensorCapture capture = pipeline.createCapture(60);
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(trace))) {
+            capture.read(reader);
+        }
+
+        int windows = countWindows(capture);
+
+        if(windows == 0){
+            throw new IOException(trace + " is shorter than one window");
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int block = Math.max(rounds / 10, 1);
+
+        System.out.println(parameters + ", " + windows + " windows per round");
+
+        for(int round = 0; round < rounds; round += block){
+            int blockRounds = Math.min(block, rounds - round);
+            long before = threads.getThreadAllocatedBytes(thread);
+
+            for(int r = 0; r < blockRounds; r++){
+                for(int i = 0; i < windows; i++){
+                    try {
+                        pipeline.process(capture, parameters.offsetSeconds * i, parameters.windowSeconds);
+                    } catch (IllegalArgumentException e) {
+                        // Too few minima in this window, it still counts as processed
+                    }
+                }
+            }
+
+            long bytes = threads.getThreadAllocatedBytes(thread) - before;
+            System.out.printf("rounds %5d-%5d: %8d bytes per window%n", round + 1, round + blockRounds, bytes / ((long) blockRounds * windows));
+        }
+    }
+
+    private int countWindows(SensorCapture capture){
+        if(capture.size() == 0){
+            return 0;
+        }
+
+        long duration = capture.timestamps[capture.size() - 1] - capture.timestamps[0];
+        long window = parameters.windowSeconds * 1000L;
+
+        return duration < window ? 0 : (int) ((duration - window) / (parameters.offsetSeconds * 1000L)) + 1;
+    }
+}
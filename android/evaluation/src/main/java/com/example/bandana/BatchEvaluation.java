@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the fingerprint pipeline of the app over recorded rotatedData traces ("timestamp,value"
+ * lines) on all cores and writes the fingerprint, reliabilities and stage timings of every window
+ * to a results file. Every worker thread keeps its own pipeline and capture, so the buffers are
+ * reused from trace to trace. The traces are written in the order they were given, no matter in
+ * which order the workers finish them. The cycles of a window can additionally be resampled on
+ * several threads, which only pays off if cores are left over by the workers.
+ *
+ * Usage: BatchEvaluation [options] results.bin trace-or-directory...
+ *        BatchEvaluation --summary results.bin
+ *        BatchEvaluation [options] --agreement first-device-directory second-device-directory
+ *        BatchEvaluation [options] --soak rounds trace
+ *        BatchEvaluation [options] --compare-modes trace-or-directory...
+ *        BatchEvaluation --compare-filters trace-or-directory...
+ */
+public class BatchEvaluation {
+
+    final EvaluationResults.Parameters parameters;
+    final int threads;
+    int resampleThreads = 1; // Threads resampling the cycles of one window, see FingerprintPipeline.setParallelism
+
+    private final ThreadLocal<FingerprintPipeline> pipelines = new ThreadLocal<FingerprintPipeline>(){
+        @Override
+        protected FingerprintPipeline initialValue(){
+            FingerprintPipeline pipeline = new FingerprintPipeline(parameters.sampleRate, parameters.windowSeconds,
+                    parameters.numberOfGaitCycles, parameters.bitsPerCycle, parameters.gaitResampleRate);
+            pipeline.setZeroPhase(parameters.zeroPhase);
+            pipeline.setDecimation(parameters.decimation);
+            pipeline.setBitsPerWindow(parameters.bitsPerWindow);
+            pipeline.setParallelism(resampleThreads, 8);
+            return pipeline;
+        }
+    };
+
+    private final ThreadLocal<SensorCapture> captures = new ThreadLocal<SensorCapture>(){
+        @Override
+        protected SensorCapture initialValue(){
+            return pipelines.get().createCapture(60);
+        }
+    };
+
+    public BatchEvaluation(EvaluationResults.Parameters parameters, int threads){
+        this.parameters = parameters;
+        this.threads = threads;
+    }
+
+    /** Processes the traces and writes their results to output, returns the number of traces that failed */
+    public int run(List<File> traces, File output) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<EvaluationResults.Trace>> results = new ArrayList<>(traces.size());
+        int failed = 0;
+
+        for(final File trace : traces){
+            results.add(executor.submit(new Callable<EvaluationResults.Trace>(){
+                @Override
+                public EvaluationResults.Trace call(){
+                    return evaluate(trace);
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        try (EvaluationResults.Writer writer = new EvaluationResults.Writer(output, parameters, traces.size())) {
+            for(Future<EvaluationResults.Trace> result : results){
+                EvaluationResults.Trace trace;
+
+                try {
+                    trace = result.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+
+                if(trace.error != null){
+                    System.err.println(trace.path + ": " + trace.error);
+                    failed++;
+                }
+
+                writer.write(trace);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return failed;
+    }
+
+    /** Processes every window of one trace with the pipeline of the calling thread */
+    EvaluationResults.Trace evaluate(File file){
+        EvaluationResults.Trace trace = new EvaluationResults.Trace();
+        trace.path = file.getPath();
+
+        FingerprintPipeline pipeline = pipelines.get();
+        SensorCapture capture = captures.get();
+        capture.reset();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            capture.read(reader);
+
+            for(int i = 0; i < getWindows(capture); i++){
+                int offset = parameters.offsetSeconds * i;
+                Quantization quantization = pipeline.process(capture, offset, parameters.windowSeconds);
+                int[] range = capture.getWindow(offset, parameters.windowSeconds);
+
+                EvaluationResults.Window window = new EvaluationResults.Window();
+                window.startTime = capture.timestamps[range[0]];
+                window.samples = range[1] - range[0];
+                window.cycles = pipeline.getCycles().getRows();
+                pack(quantization, window);
+                window.filterNanos = pipeline.filterNanos;
+                window.detectionNanos = pipeline.detectionNanos;
+                window.quantizationNanos = pipeline.quantizationNanos;
+
+                trace.windows.add(window);
+            }
+        } catch (Exception e) {
+            // One broken trace must not stop the batch, it is recorded with its error instead
+            trace.error = e.toString();
+            trace.windows.clear();
+        }
+
+        return trace;
+    }
+
+    /** Returns the number of complete windows in the capture */
+    int getWindows(SensorCapture capture){
+        return getWindows(capture, parameters);
+    }
+
+    /** Returns the number of complete windows of the given parameters in the capture */
+    static int getWindows(SensorCapture capture, EvaluationResults.Parameters parameters){
+        if(capture.size() == 0){
+            return 0;
+        }
+
+        long duration = capture.timestamps[capture.size() - 1] - capture.timestamps[0];
+        long window = parameters.windowSeconds * 1000L;
+
+        if(duration < window){
+            return 0;
+        }
+
+        return (int) ((duration - window) / (parameters.offsetSeconds * 1000L)) + 1;
+    }
+
+    private static void pack(Quantization quantization, EvaluationResults.Window window){
+        PackedFingerprint fingerprint = quantization.getPackedFingerprint();
+        double[] reliability = quantization.getReliabilities();
+
+        window.bits = fingerprint.size();
+        window.fingerprint = new byte[(window.bits + 7) / 8];
+        window.reliability = new float[window.bits];
+
+        for(int i = 0; i < window.bits; i++){
+            window.fingerprint[i >> 3] |= fingerprint.get(i) << (i & 7);
+            window.reliability[i] = (float) reliability[i];
+        }
+    }
+
+    /** Adds the trace files given directly or found in the given directory, sorted by name */
+    static void collect(File file, List<File> traces){
+        if(file.isDirectory()){
+            File[] children = file.listFiles();
+
+            if(children != null){
+                Arrays.sort(children);
+
+                for(File child : children){
+                    collect(child, traces);
+                }
+            }
+        } else if(file.isFile()){
+            traces.add(file);
+        } else {
+            System.err.println(file + ": no such file");
+        }
+    }
+
+    /** Prints the number of windows and mean stage timings of a results file */
+    static void summary(File file) throws IOException {
+        try (EvaluationResults.Reader reader = new EvaluationResults.Reader(file)) {
+            int traces = 0, failed = 0;
+            long windows = 0, bits = 0, filter = 0, detection = 0, quantization = 0;
+            EvaluationResults.Trace trace;
+
+            while((trace = reader.read()) != null){
+                traces++;
+
+                if(trace.error != null){
+                    failed++;
+                }
+
+                for(EvaluationResults.Window window : trace.windows){
+                    windows++;
+                    bits += window.bits;
+                    filter += window.filterNanos;
+                    detection += window.detectionNanos;
+                    quantization += window.quantizationNanos;
+                }
+            }
+
+            System.out.println(reader.getParameters());
+            System.out.println(traces + " traces (" + failed + " failed), " + windows + " windows, " + bits + " bits");
+
+            if(windows > 0){
+                System.out.printf("mean per window: filter %.1f us, detection %.1f us, quantization %.1f us%n",
+                        filter / 1e3 / windows, detection / 1e3 / windows, quantization / 1e3 / windows);
+            }
+        }
+    }
+
+    private static void usage(){
+        System.err.println("usage: BatchEvaluation [options] results.bin trace-or-directory...");
+        System.err.println("       BatchEvaluation --summary results.bin");
+        System.err.println("       BatchEvaluation [options] --agreement first-device-directory second-device-directory");
+        System.err.println("       BatchEvaluation [options] --soak rounds trace");
+        System.err.println("       BatchEvaluation [options] --compare-modes trace-or-directory...");
+        System.err.println("       BatchEvaluation --compare-filters trace-or-directory...");
+        System.err.println("options: --threads n (all cores), --rate hz (50), --window s (18), --offset s (9),");
+        System.err.println("         --cycles n (12), --bits n (4), --bits-per-window n (1), --resample n (40),");
+        System.err.println("         --decimation n (1), --zero-phase, --resample-threads n (1)");
+        System.err.println("--agreement compares 2 to --cycles cycles with 1 to 3 bits per window");
+        System.err.println("--soak reports the bytes allocated per window while one pipeline processes the trace again and again");
+        System.err.println("--compare-modes resamples the detected cycles with the FFT and the time-domain resampler and compares them");
+        System.err.println("--compare-filters filters the traces with the polynomial and the cascade band-pass and compares both to an exact evaluation");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Same defaults as MainService
+        EvaluationResults.Parameters parameters = new EvaluationResults.Parameters();
+        parameters.sampleRate = 50;
+        parameters.windowSeconds = 18;
+        parameters.offsetSeconds = 9;
+        parameters.numberOfGaitCycles = 12;
+        parameters.bitsPerCycle = 4;
+        parameters.gaitResampleRate = 40;
+        parameters.decimation = 1;
+        parameters.bitsPerWindow = 1;
+        boolean agreement = false;
+        boolean soak = false;
+        boolean compareModes = false;
+        boolean compareFilters = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int resampleThreads = 1;
+
+        int i = 0;
+
+        try {
+            for(; i < args.length && args[i].startsWith("--"); i++){
+                switch(args[i]){
+                    case "--summary": summary(new File(args[++i])); return;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--resample-threads": resampleThreads = Integer.parseInt(args[++i]); break;
+                    case "--rate": parameters.sampleRate = Integer.parseInt(args[++i]); break;
+                    case "--window": parameters.windowSeconds = Integer.parseInt(args[++i]); break;
+                    case "--offset": parameters.offsetSeconds = Integer.parseInt(args[++i]); break;
+                    case "--cycles": parameters.numberOfGaitCycles = Integer.parseInt(args[++i]); break;
+                    case "--bits": parameters.bitsPerCycle = Integer.parseInt(args[++i]); break;
+                    case "--bits-per-window": parameters.bitsPerWindow = Integer.parseInt(args[++i]); break;
+                    case "--agreement": agreement = true; break;
+                    case "--soak": soak = true; break;
+                    case "--compare-modes": compareModes = true; break;
+                    case "--compare-filters": compareFilters = true; break;
+                    case "--resample": parameters.gaitResampleRate = Integer.parseInt(args[++i]); break;
+                    case "--decimation": parameters.decimation = Integer.parseInt(args[++i]); break;
+                    case "--zero-phase": parameters.zeroPhase = true; break;
+                    default: usage();
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            usage();
+        }
+
+        // Only the comparisons run on a single trace without a results file
+        int minimumArguments = compareModes || compareFilters ? 1 : 2;
+
+        if(args.length - i < minimumArguments || threads < 1 || resampleThreads < 1 || parameters.offsetSeconds < 1 || parameters.decimation < 1){
+            usage();
+        }
+
+        if(compareModes || compareFilters){
+            List<File> traces = new ArrayList<>();
+
+            for(; i < args.length; i++){
+                collect(new File(args[i]), traces);
+            }
+
+            if(compareFilters){
+                new FilterComparison().run(traces);
+            } else {
+                new ModeComparison(parameters).run(traces);
+            }
+
+            return;
+        }
+
+        if(soak){
+            if(args.length - i != 2){
+                usage();
+            }
+
+            int rounds = 0;
+
+            try {
+                rounds = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+                usage();
+            }
+
+            new AllocationSoak(parameters).run(new File(args[i + 1]), rounds);
+            return;
+        }
+
+        if(agreement){
+            if(args.length - i != 2){
+                usage();
+            }
+
+            int[] cycleCounts = new int[Math.max(parameters.numberOfGaitCycles - 1, 1)];
+            for(int c = 0; c < cycleCounts.length; c++){
+                cycleCounts[c] = Math.min(c + 2, parameters.numberOfGaitCycles);
+            }
+
+            AgreementEvaluation evaluation = new AgreementEvaluation(parameters, threads, cycleCounts, new int[]{1, 2, 3}, 32);
+            List<File[]> pairs = AgreementEvaluation.collectPairs(new File(args[i]), new File(args[i + 1]));
+            evaluation.report(evaluation.run(pairs));
+            return;
+        }
+
+        File output = new File(args[i]);
+        List<File> traces = new ArrayList<>();
+
+        for(i++; i < args.length; i++){
+            collect(new File(args[i]), traces);
+        }
+
+        long start = System.nanoTime();
+        BatchEvaluation evaluation = new BatchEvaluation(parameters, threads);
+        evaluation.resampleThreads = resampleThreads;
+        int failed = evaluation.run(traces, output);
+
+        System.out.printf("%d traces (%d failed) in %.1f s on %d threads%n", traces.size(), failed,
+                (System.nanoTime() - start) / 1e9, threads);
+    }
+}
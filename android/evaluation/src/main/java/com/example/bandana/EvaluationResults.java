@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary results file of a batch evaluation. After a header with the pipeline parameters
+ * every trace is stored as its path and windows; a window holds its start time, the number of
+ * samples and gait cycles, the fingerprint packed eight bits per byte, one float reliability per
+ * bit and the time spent in the filter, detection and quantisation stages. Traces that could not
+ * be processed are stored with their error message instead of windows.
+ */
+public class EvaluationResults {
+
+    static final int MAGIC = 0x42414e44; // "BAND"
+    static final int VERSION = 3;
+
+    /** Parameters the traces were processed with */
+    public static class Parameters {
+        public int sampleRate;
+        public int windowSeconds;
+        public int offsetSeconds;
+        public int numberOfGaitCycles;
+        public int bitsPerCycle;
+        public int gaitResampleRate;
+        public int decimation;
+        public int bitsPerWindow;
+        public boolean zeroPhase;
+
+        @Override
+        public String toString(){
+            return sampleRate + " Hz, " + windowSeconds + " s windows every " + offsetSeconds + " s, "
+                    + numberOfGaitCycles + " cycles, " + bitsPerCycle + " windows per cycle, " + (bitsPerWindow > 1 ? bitsPerWindow + " bits per window, " : "")
+                    + gaitResampleRate + " points per cycle" + (decimation > 1 ? ", decimated by " + decimation : "") + (zeroPhase ? ", zero-phase" : "");
+        }
+    }
+
+    /** One processed fingerprint window */
+    public static class Window {
+        public long startTime; // Milliseconds, timestamp of the first sample
+        public int samples;
+        public int cycles;
+        public int bits;
+        public byte[] fingerprint; // Bit i is bit i % 8 of byte i / 8
+        public float[] reliability;
+        public long filterNanos;
+        public long detectionNanos;
+        public long quantizationNanos;
+
+        /** Returns bit i of the fingerprint */
+        public int getBit(int i){
+            return (fingerprint[i >> 3] >> (i & 7)) & 1;
+        }
+    }
+
+    /** The windows of one trace file, or the error that stopped it */
+    public static class Trace {
+        public String path;
+        public String error; // Null if the trace was processed
+        public List<Window> windows = new ArrayList<>();
+    }
+
+    /** Writes a results file, traces are appended in the order they are passed */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+
+        public Writer(File file, Parameters parameters, int traces) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(parameters.sampleRate);
+            out.writeShort(parameters.windowSeconds);
+            out.writeShort(parameters.offsetSeconds);
+            out.writeShort(parameters.numberOfGaitCycles);
+            out.writeShort(parameters.bitsPerCycle);
+            out.writeShort(parameters.gaitResampleRate);
+            out.writeShort(parameters.decimation);
+            out.writeShort(parameters.bitsPerWindow);
+            out.writeBoolean(parameters.zeroPhase);
+            out.writeInt(traces);
+        }
+
+        public void write(Trace trace) throws IOException {
+            out.writeUTF(trace.path);
+
+            if(trace.error != null){
+                out.writeInt(-1);
+                out.writeUTF(trace.error);
+                return;
+            }
+
+            out.writeInt(trace.windows.size());
+
+            for(Window window : trace.windows){
+                out.writeLong(window.startTime);
+                out.writeInt(window.samples);
+                out.writeShort(window.cycles);
+                out.writeInt(window.bits);
+                out.write(window.fingerprint, 0, (window.bits + 7) / 8);
+
+                for(int i = 0; i < window.bits; i++){
+                    out.writeFloat(window.reliability[i]);
+                }
+
+                out.writeLong(window.filterNanos);
+                out.writeLong(window.detectionNanos);
+                out.writeLong(window.quantizationNanos);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Reads a results file trace after trace */
+    public static class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final Parameters parameters = new Parameters();
+        private final int traces;
+        private int read;
+
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+
+            if(in.readInt() != MAGIC){
+                in.close();
+                throw new IOException(file + " is not a results file");
+            }
+
+            int version = in.readShort();
+
+            if(version != VERSION){
+                in.close();
+                throw new IOException(file + " has unsupported version " + version);
+            }
+
+            parameters.sampleRate = in.readShort();
+            parameters.windowSeconds = in.readShort();
+            parameters.offsetSeconds = in.readShort();
+            parameters.numberOfGaitCycles = in.readShort();
+            parameters.bitsPerCycle = in.readShort();
+            parameters.gaitResampleRate = in.readShort();
+            parameters.decimation = in.readShort();
+            parameters.bitsPerWindow = in.readShort();
+            parameters.zeroPhase = in.readBoolean();
+            traces = in.readInt();
+        }
+
+        public Parameters getParameters(){
+            return parameters;
+        }
+
+        /** Returns the number of traces in the file */
+        public int getTraces(){
+            return traces;
+        }
+
+        /** Returns the next trace, null after the last one */
+        public Trace read() throws IOException {
+            if(read == traces){
+                return null;
+            }
+
+            Trace trace = new Trace();
+
+            try {
+                trace.path = in.readUTF();
+                int windows = in.readInt();
+
+                if(windows < 0){
+                    trace.error = in.readUTF();
+                }
+
+                for(int i = 0; i < windows; i++){
+                    Window window = new Window();
+                    window.startTime = in.readLong();
+                    window.samples = in.readInt();
+                    window.cycles = in.readShort();
+                    window.bits = in.readInt();
+                    window.fingerprint = new byte[(window.bits + 7) / 8];
+                    in.readFully(window.fingerprint);
+                    window.reliability = new float[window.bits];
+
+                    for(int j = 0; j < window.bits; j++){
+                        window.reliability[j] = in.readFloat();
+                    }
+
+                    window.filterNanos = in.readLong();
+                    window.detectionNanos = in.readLong();
+                    window.quantizationNanos = in.readLong();
+                    trace.windows.add(window);
+                }
+            } catch (EOFException e) {
+                throw new IOException("results file ends inside trace " + read, e);
+            }
+
+            read++;
+            return trace;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+/**
+ * Runs Filter.compareChebyBandpass on the unfiltered samples of every trace and splits the
+ * difference into its causes by also evaluating both forms with 80 significant digits: the
+ * rounding error of the polynomial and of the cascade form, each against its own exact output, and
+ * the difference between the exact outputs, which comes from the sections reproducing the
+ * polynomials only to about 2e-14. All figures are the largest difference relative to the largest
+ * output magnitude of the trace. The band-pass is designed for 50 Hz, the rate of the traces.
+ */
+public class FilterComparison {
+
+    static final MathContext EXACT = new MathContext(80);
+
+    double polynomialToCascade;
+    double polynomialRounding;
+    double cascadeRounding;
+    double exactToExact; // Exact polynomial to exact cascade
+    int traces;
+
+    /** Compares the filter forms on every trace and prints the results */
+    public void run(List<File> traces) throws IOException {
+        SensorCapture capture = new SensorCapture(60 * 50, Filter.createChebyBandpass());
+
+        for(File trace : traces){
+            capture.reset();
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(trace))) {
+                capture.read(reader);
+            } catch (IOException | RuntimeException e) {
+                // As in BatchEvaluation one broken trace must not stop the others
+                System.err.println(trace + ": " + e);
+                continue;
+            }
+
+            Signal input = capture.getSamples(0, capture.size());
+
+            if(input.size() == 0){
+                continue;
+            }
+
+            Signal polynomial = new Filter().chebyBandpass(input);
+            Signal cascade = new Filter().chebyBandpassCascade(input);
+            double[] exactPolynomial = filterPolynomialExactly(input);
+            double[] exactCascade = filterCascadeExactly(input);
+
+            double toCascade = Filter.compareChebyBandpass(input);
+            double polynomialError = getRelativeError(polynomial, exactPolynomial);
+            double cascadeError = getRelativeError(cascade, exactCascade);
+            double exactError = getRelativeError(new Signal(exactCascade), exactPolynomial);
+
+            System.out.printf("%s: polynomial to cascade %.3g, polynomial rounding %.3g, cascade rounding %.3g, exact polynomial to exact cascade %.3g%n",
+                    trace, toCascade, polynomialError, cascadeError, exactError);
+
+            this.traces++;
+            polynomialToCascade = Math.max(polynomialToCascade, toCascade);
+            polynomialRounding = Math.max(polynomialRounding, polynomialError);
+            cascadeRounding = Math.max(cascadeRounding, cascadeError);
+            exactToExact = Math.max(exactToExact, exactError);
+        }
+
+        System.out.println("all traces: " + this);
+    }
+
+    /** Runs the recursion of Filter.chebyBandpass on the same double coefficients with 80 digits */
+    static double[] filterPolynomialExactly(Signal input){
+        BigDecimal[] numerators = toBigDecimals(Filter.CHEBY_BANDPASS_NUMERATORS);
+        BigDecimal[] denominators = toBigDecimals(Filter.CHEBY_BANDPASS_DENOMINATORS);
+        int order = numerators.length - 1;
+
+        BigDecimal[] x = new BigDecimal[input.size()];
+        BigDecimal[] y = new BigDecimal[input.size()];
+        double[] output = new double[input.size()];
+
+        for(int i = 0; i < input.size(); i++){
+            x[i] = new BigDecimal(input.get(i));
+            BigDecimal sum = BigDecimal.ZERO;
+
+            for(int j = 0; j <= Math.min(i, order); j++){
+                sum = sum.add(numerators[j].multiply(x[i - j], EXACT), EXACT);
+            }
+
+            for(int j = 1; j <= Math.min(i, order); j++){
+                sum = sum.subtract(denominators[j].multiply(y[i - j], EXACT), EXACT);
+            }
+
+            y[i] = sum;
+            output[i] = sum.doubleValue();
+        }
+
+        return output;
+    }
+
+    /** Runs the sections of Filter.CHEBY_BANDPASS_SOS one after the other with 80 digits */
+    static double[] filterCascadeExactly(Signal input){
+        BigDecimal[] x = new BigDecimal[input.size()];
+
+        for(int i = 0; i < input.size(); i++){
+            x[i] = new BigDecimal(input.get(i));
+        }
+
+        for(double[] section : Filter.CHEBY_BANDPASS_SOS){
+            BigDecimal[] c = toBigDecimals(section); // a0 is 1
+            BigDecimal[] y = new BigDecimal[x.length];
+
+            for(int i = 0; i < x.length; i++){
+                BigDecimal sum = c[0].multiply(x[i], EXACT);
+
+                for(int j = 1; j <= Math.min(i, 2); j++){
+                    sum = sum.add(c[j].multiply(x[i - j], EXACT), EXACT);
+                    sum = sum.subtract(c[3 + j].multiply(y[i - j], EXACT), EXACT);
+                }
+
+                y[i] = sum;
+            }
+
+            x = y;
+        }
+
+        double[] output = new double[x.length];
+
+        for(int i = 0; i < x.length; i++){
+            output[i] = x[i].doubleValue();
+        }
+
+        return output;
+    }
+
+    private static BigDecimal[] toBigDecimals(double[] values){
+        BigDecimal[] result = new BigDecimal[values.length];
+
+        for(int i = 0; i < values.length; i++){
+            result[i] = new BigDecimal(values[i]);
+        }
+
+        return result;
+    }
+
+    /** Returns the largest difference to the exact output relative to its largest magnitude */
+    private static double getRelativeError(Signal output, double[] exact){
+        double maxDifference = 0;
+        double maxMagnitude = 0;
+
+        for(int i = 0; i < exact.length; i++){
+            maxDifference = Math.max(maxDifference, Math.abs(output.get(i) - exact[i]));
+            maxMagnitude = Math.max(maxMagnitude, Math.abs(exact[i]));
+        }
+
+        return maxMagnitude > 0 ? maxDifference / maxMagnitude : maxDifference;
+    }
+
+    @Override
+    public String toString(){
+        if(traces == 0){
+            return "no samples";
+        }
+
+        return String.format("%d traces, polynomial to cascade %.3g, polynomial rounding %.3g, cascade rounding %.3g, exact polynomial to exact cascade %.3g",
+                traces, polynomialToCascade, polynomialRounding, cascadeRounding, exactToExact);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.util.Arrays;
+
+/**
+ * Runs the Madgwick update of LinearAcceleration over many independent traces at once, e.g. the
+ * recorded windows of an offline evaluation, which is why it is not part of the app. Like FilterBank, the inputs are structure of arrays,
+ * one array per axis with sample n of trace c at n * traces + c, and component k of the
+ * quaternion of trace c is kept at k * traces + c. The innermost loop therefore walks all traces
+ * with unit stride, so the long dependency chain of one trace's update overlaps with the updates
+ * of the others. The step itself is the one of LinearAcceleration, so every trace gets exactly the
+ * output LinearAcceleration.calculate would produce for it on its own. With -PvectorJdk the
+ * evaluation and benchmark modules also build a Vector API subclass that updates a whole vector of
+ * traces per instruction, see create.
+ */
+public class LinearAccelerationBatch {
+
+    final int traces;
+
+    // Quaternion of every trace, component k of trace c at k * traces + c
+    final double[] q;
+
+    public LinearAccelerationBatch(int traces){
+        this.traces = traces;
+
+        q = new double[4 * traces];
+        reset();
+    }
+
+    /**
+     * Returns the Vector API version if it was compiled in (the opt-in vector source set of the
+     * evaluation and benchmark modules) and the JVM runs with jdk.incubator.vector, this class
+     * otherwise
+     */
+    public static LinearAccelerationBatch create(int traces){
+        try {
+            Class<?> vector = Class.forName("com.example.bandana.LinearAccelerationVector");
+            return (LinearAccelerationBatch) vector.getConstructor(int.class).newInstance(traces);
+        } catch (Exception | LinkageError e) {
+            return new LinearAccelerationBatch(traces);
+        }
+    }
+
+    /** Returns the number of traces */
+    public int getTraces(){
+        return traces;
+    }
+
+    /** Sets the orientation of all traces back to the initial one */
+    public void reset(){
+        Arrays.fill(q, 0, traces, 1.0);
+        Arrays.fill(q, traces, 4 * traces, 0.0);
+    }
+
+    /**
+     * Fuses length samples of every trace. The accelerometer, the gyroscope (degrees per second) and
+     * the timestamps (milliseconds) hold sample n of trace c at n * traces + c. As in
+     * calculateClean the first sample only starts the orientation, the vertical acceleration of
+     * samples 1 to length - 1, gravity included, is written to vertical at (n - 1) * traces + c.
+     */
+    public void calculate(double[] ax, double[] ay, double[] az, double[] gx, double[] gy, double[] gz,
+                          long[] timestamps, int length, double[] vertical){
+        checkLength(ax, ay, az, gx, gy, gz, timestamps, length, vertical);
+
+        for(int n = 1; n < length; n++){
+            int base = n * traces;
+            int out = base - traces;
+
+            // Independent across traces
+            for(int c = 0; c < traces; c++){
+                int i = base + c;
+
+                // Same rounding as calculate, which gets the microseconds as a long
+                long deltat = (timestamps[i] - timestamps[i - traces]) * 1000;
+                LinearAcceleration.update_nomag(q, c, traces, ax[i], ay[i], az[i],
+                        Math.toRadians(gx[i]), Math.toRadians(gy[i]), Math.toRadians(gz[i]), deltat);
+
+                vertical[out + c] = LinearAcceleration.rotateVertical(q, c, traces, ax[i], ay[i], az[i]);
+            }
+        }
+    }
+
+    /** Throws if one of the arrays is too short for length samples of every trace */
+    void checkLength(double[] ax, double[] ay, double[] az, double[] gx, double[] gy, double[] gz,
+                     long[] timestamps, int length, double[] vertical){
+        int size = length * traces;
+
+        if(ax.length < size || ay.length < size || az.length < size || gx.length < size || gy.length < size
+                || gz.length < size || timestamps.length < size || vertical.length < size - traces){
+            throw new IllegalArgumentException("expected " + length + " samples of " + traces + " traces");
+        }
+    }
+}
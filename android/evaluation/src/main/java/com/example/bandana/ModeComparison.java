@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs Resampler.compareModes on the gait cycles the pipeline detects in every window of the
+ * traces, so the accuracy of the time-domain resampler against the FFT path can be checked on
+ * recorded data before it is chosen. Prints the figures of every trace and of all windows
+ * together: the largest and the root mean square difference of a resampled point, and the share
+ * of fingerprint bits both modes agree on.
+ */
+public class ModeComparison {
+
+    final EvaluationResults.Parameters parameters;
+
+    int windows;
+    int cycles;
+    double maxError;
+    double squaredErrorSum; // Over all resampled points
+    double agreementSum; // Over all windows with cycles
+
+    public ModeComparison(EvaluationResults.Parameters parameters){
+        this.parameters = parameters;
+    }
+
+    /** Compares the modes on every window of the traces and prints the results */
+    public void run(List<File> traces) throws IOException {
+        FingerprintPipeline pipeline = new FingerprintPipeline(parameters.sampleRate, parameters.windowSeconds,
+                parameters.numberOfGaitCycles, parameters.bitsPerCycle, parameters.gaitResampleRate);
+        pipeline.setZeroPhase(parameters.zeroPhase);
+        pipeline.setDecimation(parameters.decimation);
+        pipeline.setBitsPerWindow(parameters.bitsPerWindow);
+
+        SensorCapture capture = pipeline.createCapture(60);
+
+        System.out.println(parameters);
+
+        for(File trace : traces){
+            capture.reset();
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(trace))) {
+                capture.read(reader);
+            } catch (IOException | RuntimeException e) {
+                // As in BatchEvaluation one broken trace must not stop the others
+                System.err.println(trace + ": " + e);
+                continue;
+            }
+
+            ModeComparison traceComparison = new ModeComparison(parameters);
+
+            for(int i = 0; i < BatchEvaluation.getWindows(capture, parameters); i++){
+                try {
+                    pipeline.process(capture, parameters.offsetSeconds * i, parameters.windowSeconds);
+                } catch (IllegalArgumentException e) {
+                    // Too few minima in this window, there is nothing to compare
+                    continue;
+                }
+
+                // The cycles are views into the pipeline's buffers, so they are compared before the next window
+                List<Signal> detected = pipeline.getDetectedCycles();
+                Resampler.Comparison comparison = Resampler.compareModes(detected, parameters.gaitResampleRate, parameters.bitsPerCycle);
+
+                traceComparison.add(comparison);
+                add(comparison);
+            }
+
+            System.out.println(trace + ": " + traceComparison);
+        }
+
+        System.out.println("all traces: " + this);
+    }
+
+    /** Adds the comparison of one window */
+    void add(Resampler.Comparison comparison){
+        if(comparison.cycles == 0){
+            return;
+        }
+
+        windows++;
+        cycles += comparison.cycles;
+        maxError = Math.max(maxError, comparison.maxError);
+        squaredErrorSum += comparison.rmsError * comparison.rmsError * comparison.cycles * parameters.gaitResampleRate;
+        agreementSum += comparison.bitAgreement;
+    }
+
+    @Override
+    public String toString(){
+        if(windows == 0){
+            return "no cycles";
+        }
+
+        return String.format("%d windows, %d cycles, max error %.4g, rms error %.4g, mean bit agreement %.3f",
+                windows, cycles, maxError, Math.sqrt(squaredErrorSum / ((double) cycles * parameters.gaitResampleRate)),
+                agreementSum / windows);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * FilterBank on the incubating Vector API of JDK 16 and later, one lane per channel. A bank has
+ * only a few channels, so the widest vector the machine supports that the channels still fill is
+ * used, e.g. 256 bits for x, y, z and |a|; channels left over are filtered by the scalar loop.
+ * The sections run the operations of the scalar loop in the same order without fused
+ * multiply-adds, so every channel gets the output of FilterBank. Only built by the evaluation and
+ * benchmark modules when asked for, see their build.gradle, and picked up by FilterBank.create.
+ */
+public class FilterBankVector extends FilterBank {
+
+    final VectorSpecies<Double> species; // Null if not even two channels fill a vector
+
+    private final double[] frame;
+
+    public FilterBankVector(BiquadCascade cascade, int channels){
+        super(cascade, channels);
+
+        species = getSpecies(channels);
+        frame = new double[channels];
+    }
+
+    /** Returns the widest supported species with no more lanes than channels */
+    static VectorSpecies<Double> getSpecies(int channels){
+        VectorSpecies<Double> preferred = DoubleVector.SPECIES_PREFERRED;
+
+        if(channels >= 8 && preferred.length() >= 8){
+            return DoubleVector.SPECIES_512;
+        } else if(channels >= 4 && preferred.length() >= 4){
+            return DoubleVector.SPECIES_256;
+        } else if(channels >= 2 && preferred.length() >= 2){
+            return DoubleVector.SPECIES_128;
+        }
+
+        return null;
+    }
+
+    @Override
+    public void filter(double[][] input, double[][] output, int offset, int length){
+        if(species == null){
+            super.filter(input, output, offset, length);
+            return;
+        }
+
+        checkChannels(input, output);
+
+        double[] x = frame;
+        int lanes = species.loopBound(channels);
+
+        for(int n = offset; n < offset + length; n++){
+            for(int c = 0; c < channels; c++){
+                x[c] = input[c][n];
+            }
+
+            for(int i = 0, k = 0; i < sections; i++, k += 5){
+                double b0 = coefficients[k], b1 = coefficients[k + 1], b2 = coefficients[k + 2];
+                double a1 = coefficients[k + 3], a2 = coefficients[k + 4];
+                double[] s1 = z1[i];
+                double[] s2 = z2[i];
+
+                for(int c = 0; c < lanes; c += species.length()){
+                    DoubleVector in = DoubleVector.fromArray(species, x, c);
+                    DoubleVector y = in.mul(b0).add(DoubleVector.fromArray(species, s1, c));
+                    in.mul(b1).sub(y.mul(a1)).add(DoubleVector.fromArray(species, s2, c)).intoArray(s1, c);
+                    in.mul(b2).sub(y.mul(a2)).intoArray(s2, c);
+                    y.intoArray(x, c);
+                }
+
+                for(int c = lanes; c < channels; c++){
+                    double in = x[c];
+                    double y = b0 * in + s1[c];
+                    s1[c] = b1 * in - a1 * y + s2[c];
+                    s2[c] = b2 * in - a2 * y;
+                    x[c] = y;
+                }
+            }
+
+            for(int c = 0; c < channels; c++){
+                output[c][n] = x[c];
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) IBR, TU Braunschweig & Ambient Intelligence, Aalto University
+ * All Rights Reserved
+ * Written by Caglar Yuce Kaya, Koirala Janaki, Dominik Schürmann
+ */
+package com.example.bandana;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * LinearAccelerationBatch on the incubating Vector API of JDK 16 and later, one lane per trace, so
+ * a step updates as many traces as the widest vector of the machine holds. Every lane goes through
+ * the operations of LinearAcceleration.update_nomag in the same order and without fused
+ * multiply-adds, so the output is the one of the scalar batch. The traces that do not fill a whole
+ * vector are left to the scalar step. Only built by the evaluation and benchmark modules when
+ * asked for, see their build.gradle, and picked up by LinearAccelerationBatch.create.
+ */
+public class LinearAccelerationVector extends LinearAccelerationBatch {
+
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED; // Same lane count, both 64 bit
+
+    // Math.toRadians multiplies by this constant since JDK 9
+    static final double DEGREES_TO_RADIANS = Math.toRadians(1.0);
+
+    public LinearAccelerationVector(int traces){
+        super(traces);
+    }
+
+    @Override
+    public void calculate(double[] ax, double[] ay, double[] az, double[] gx, double[] gy, double[] gz,
+                          long[] timestamps, int length, double[] vertical){
+        checkLength(ax, ay, az, gx, gy, gz, timestamps, length, vertical);
+
+        int lanes = SPECIES.loopBound(traces);
+
+        for(int n = 1; n < length; n++){
+            int base = n * traces;
+            int out = base - traces;
+
+            for(int c = 0; c < lanes; c += SPECIES.length()){
+                step(ax, ay, az, gx, gy, gz, timestamps, base + c, c, vertical, out + c);
+            }
+
+            for(int c = lanes; c < traces; c++){
+                int i = base + c;
+
+                long deltat = (timestamps[i] - timestamps[i - traces]) * 1000;
+                LinearAcceleration.update_nomag(q, c, traces, ax[i], ay[i], az[i],
+                        Math.toRadians(gx[i]), Math.toRadians(gy[i]), Math.toRadians(gz[i]), deltat);
+
+                vertical[out + c] = LinearAcceleration.rotateVertical(q, c, traces, ax[i], ay[i], az[i]);
+            }
+        }
+    }
+
+    /** One Madgwick step of the traces c to c + SPECIES.length() - 1 with their samples starting at i */
+    private void step(double[] acx, double[] acy, double[] acz, double[] gyx, double[] gyy, double[] gyz,
+                      long[] timestamps, int i, int c, double[] vertical, int out){
+        DoubleVector q1 = DoubleVector.fromArray(SPECIES, q, c);
+        DoubleVector q2 = DoubleVector.fromArray(SPECIES, q, traces + c);
+        DoubleVector q3 = DoubleVector.fromArray(SPECIES, q, 2 * traces + c);
+        DoubleVector q4 = DoubleVector.fromArray(SPECIES, q, 3 * traces + c);
+
+        DoubleVector rawX = DoubleVector.fromArray(SPECIES, acx, i);
+        DoubleVector rawY = DoubleVector.fromArray(SPECIES, acy, i);
+        DoubleVector rawZ = DoubleVector.fromArray(SPECIES, acz, i);
+        DoubleVector gx = DoubleVector.fromArray(SPECIES, gyx, i).mul(DEGREES_TO_RADIANS);
+        DoubleVector gy = DoubleVector.fromArray(SPECIES, gyy, i).mul(DEGREES_TO_RADIANS);
+        DoubleVector gz = DoubleVector.fromArray(SPECIES, gyz, i).mul(DEGREES_TO_RADIANS);
+
+        LongVector micros = LongVector.fromArray(LONG_SPECIES, timestamps, i)
+                .sub(LongVector.fromArray(LONG_SPECIES, timestamps, i - traces)).mul(1000);
+        DoubleVector deltat = ((DoubleVector) micros.convert(VectorOperators.L2D, 0)).div(1000000);
+
+        /** Auxiliary variables to avoid repeated arithmetic */
+        DoubleVector _2q1 = q1.mul(2);
+        DoubleVector _2q2 = q2.mul(2);
+        DoubleVector _2q3 = q3.mul(2);
+        DoubleVector _2q4 = q4.mul(2);
+        DoubleVector _4q1 = q1.mul(4);
+        DoubleVector _4q2 = q2.mul(4);
+        DoubleVector _4q3 = q3.mul(4);
+        DoubleVector _8q2 = q2.mul(8);
+        DoubleVector _8q3 = q3.mul(8);
+        DoubleVector q1q1 = q1.mul(q1);
+        DoubleVector q2q2 = q2.mul(q2);
+        DoubleVector q3q3 = q3.mul(q3);
+        DoubleVector q4q4 = q4.mul(q4);
+
+        DoubleVector norm = rawX.mul(rawX).add(rawY.mul(rawY)).add(rawZ.mul(rawZ)).sqrt();
+
+        // Lanes with a zero accelerometer reading keep their quaternion, as in update_nomag
+        VectorMask<Double> moving = norm.compare(VectorOperators.NE, 0.0);
+
+        norm = DoubleVector.broadcast(SPECIES, 1.0).div(norm);
+        DoubleVector ax = rawX.mul(norm);
+        DoubleVector ay = rawY.mul(norm);
+        DoubleVector az = rawZ.mul(norm);
+
+        /** Gradient decent algorithm corrective step */
+        DoubleVector s1 = _4q1.mul(q3q3).add(_2q3.mul(ax)).add(_4q1.mul(q2q2)).sub(_2q2.mul(ay));
+        DoubleVector s2 = _4q2.mul(q4q4).sub(_2q4.mul(ax)).add(q1q1.mul(4).mul(q2)).sub(_2q1.mul(ay)).sub(_4q2)
+                .add(_8q2.mul(q2q2)).add(_8q2.mul(q3q3)).add(_4q2.mul(az));
+        DoubleVector s3 = q1q1.mul(4).mul(q3).add(_2q1.mul(ax)).add(_4q3.mul(q4q4)).sub(_2q4.mul(ay)).sub(_4q3)
+                .add(_8q3.mul(q2q2)).add(_8q3.mul(q3q3)).add(_4q3.mul(az));
+        DoubleVector s4 = q2q2.mul(4).mul(q4).sub(_2q2.mul(ax)).add(q3q3.mul(4).mul(q4)).sub(_2q3.mul(ay));
+        norm = DoubleVector.broadcast(SPECIES, 1.0).div(s1.mul(s1).add(s2.mul(s2)).add(s3.mul(s3)).add(s4.mul(s4)).sqrt());
+        s1 = s1.mul(norm);
+        s2 = s2.mul(norm);
+        s3 = s3.mul(norm);
+        s4 = s4.mul(norm);
+
+        /** Compute rate of change of quaternion */
+        double beta = LinearAcceleration.BETA;
+        DoubleVector qDot1 = q2.neg().mul(gx).sub(q3.mul(gy)).sub(q4.mul(gz)).mul(0.5).sub(s1.mul(beta));
+        DoubleVector qDot2 = q1.mul(gx).add(q3.mul(gz)).sub(q4.mul(gy)).mul(0.5).sub(s2.mul(beta));
+        DoubleVector qDot3 = q1.mul(gy).sub(q2.mul(gz)).add(q4.mul(gx)).mul(0.5).sub(s3.mul(beta));
+        DoubleVector qDot4 = q1.mul(gz).add(q2.mul(gy)).sub(q3.mul(gx)).mul(0.5).sub(s4.mul(beta));
+
+        /** Integrate to yield quaternion */
+        DoubleVector n1 = q1.add(qDot1.mul(deltat));
+        DoubleVector n2 = q2.add(qDot2.mul(deltat));
+        DoubleVector n3 = q3.add(qDot3.mul(deltat));
+        DoubleVector n4 = q4.add(qDot4.mul(deltat));
+        norm = DoubleVector.broadcast(SPECIES, 1.0).div(n1.mul(n1).add(n2.mul(n2)).add(n3.mul(n3)).add(n4.mul(n4)).sqrt());
+
+        q1 = q1.blend(n1.mul(norm), moving);
+        q2 = q2.blend(n2.mul(norm), moving);
+        q3 = q3.blend(n3.mul(norm), moving);
+        q4 = q4.blend(n4.mul(norm), moving);
+
+        q1.intoArray(q, c);
+        q2.intoArray(q, traces + c);
+        q3.intoArray(q, 2 * traces + c);
+        q4.intoArray(q, 3 * traces + c);
+
+        // LinearAcceleration.rotateVertical of the raw sample
+        q2.mul(q4).sub(q1.mul(q3)).mul(2.0).mul(rawX)
+                .add(q1.mul(q2).add(q3.mul(q4)).mul(2.0).mul(rawY))
+                .add(q1.mul(q1).sub(q2.mul(q2)).sub(q3.mul(q3)).add(q4.mul(q4)).mul(rawZ))
+                .intoArray(vertical, out);
+    }
+}